@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+public class TestArtBitmaps extends AndroidTestCase {
+
+    public void testInSampleSize() {
+        assertEquals(1, ArtBitmaps.calculateInSampleSize(288, 288, 288, 288));
+        assertEquals(1, ArtBitmaps.calculateInSampleSize(288, 288, 145, 145));
+        assertEquals(2, ArtBitmaps.calculateInSampleSize(288, 288, 144, 144));
+        assertEquals(4, ArtBitmaps.calculateInSampleSize(288, 288, 64, 64));
+        assertEquals("Error: sampling must leave both dimensions at least as big as wanted",
+                2, ArtBitmaps.calculateInSampleSize(288, 144, 64, 64));
+        assertEquals(1, ArtBitmaps.calculateInSampleSize(96, 96, 192, 192));
+    }
+
+    public void testDecodedToFit() {
+        Bitmap large = ArtBitmaps.get(mContext, R.drawable.art_clear, 500, 500);
+        Bitmap small = ArtBitmaps.get(mContext, R.drawable.art_clear, 50, 40);
+        assertNotNull(small);
+        assertTrue("Error: art should fit the size asked for",
+                small.getWidth() <= 50 && small.getHeight() <= 40);
+        assertTrue("Error: art should fill the size asked for in one dimension",
+                small.getWidth() == 50 || small.getHeight() == 40);
+        assertTrue("Error: art should never be scaled up",
+                large.getWidth() < 500 && large.getHeight() < 500);
+    }
+
+    public void testCached() {
+        Bitmap art = ArtBitmaps.getArt(mContext, R.drawable.art_rain);
+        assertSame("Error: the same art at the same size should be decoded once",
+                art, ArtBitmaps.getArt(mContext, R.drawable.art_rain));
+        assertNotSame(art, ArtBitmaps.getLargeIcon(mContext, R.drawable.art_rain));
+    }
+}
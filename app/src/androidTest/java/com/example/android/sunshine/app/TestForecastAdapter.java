@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.DayMath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestForecastAdapter extends AndroidTestCase {
+
+    // Named after the forecast columns; only the order matters to ForecastItem
+    private static final String[] COLUMNS = {"_id", "date", "short_desc", "max", "min",
+            "location_setting", "weather_id", "coord_lat", "coord_long", "humidity", "pressure",
+            "wind", "degrees"};
+
+    private Context mThemedContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mThemedContext = new ContextThemeWrapper(mContext, R.style.AppTheme);
+    }
+
+    /*
+        Runs the test's body on the main thread, as the list and Glide need, and rethrows
+        whatever it threw.
+     */
+    private void runOnMainSync(final Runnable body) throws Throwable {
+        final Throwable[] thrown = new Throwable[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    body.run();
+                } catch (Throwable t) {
+                    thrown[0] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue("Error: the main thread didn't run the test", done.await(10, TimeUnit.SECONDS));
+        if (thrown[0] != null) throw thrown[0];
+    }
+
+    private ForecastAdapter createAdapter() {
+        return new ForecastAdapter(mThemedContext, null, new View(mThemedContext),
+                AbsListView.CHOICE_MODE_NONE);
+    }
+
+    // Tomorrow's weather, with the given condition
+    private ForecastItem createItem(int weatherId, String description) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[] {1, DayMath.startOfDay(
+                DayMath.toEpochDay(System.currentTimeMillis()) + 1), description, 20.0, 10.0,
+                "99705", weatherId, "64.7488", "-147.353", 80.0, 1013.0, 3.5, 90.0});
+        assertTrue(cursor.moveToFirst());
+        ForecastItem item = new ForecastItem(mContext, cursor, true);
+        cursor.close();
+        return item;
+    }
+
+    private static void showItem(ForecastAdapter adapter, ForecastItem item) {
+        List<ForecastItem> items = new ArrayList<>();
+        items.add(item);
+        adapter.swapItems(ForecastDiff.compute(Collections.<ForecastItem>emptyList(), items));
+    }
+
+    /*
+        The adapter has stable ids, which RecyclerView only allows to be set before anything
+        observes the adapter.
+     */
+    public void testAttachToRecyclerView() throws Throwable {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ForecastAdapter adapter = createAdapter();
+                assertTrue(adapter.hasStableIds());
+                RecyclerView list = new RecyclerView(mThemedContext);
+                list.setLayoutManager(new LinearLayoutManager(mThemedContext));
+                list.setAdapter(adapter);
+                assertSame(adapter, list.getAdapter());
+            }
+        });
+    }
+
+    /*
+        Weather ids with no icon of their own, like 900 (tornado), bind a flat row without one
+        rather than asking for resource -1.
+     */
+    public void testBindFlatRowWithUnmappedWeatherId() throws Throwable {
+        final ForecastItem item = createItem(900, "Tornado");
+        assertEquals("Error: weather id 900 was expected to have no icon", -1, item.iconResource);
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ForecastAdapter adapter = createAdapter();
+                adapter.setUseTodayLayout(false);
+                adapter.setUseFlatRows(true);
+                RecyclerView list = new RecyclerView(mThemedContext);
+                list.setLayoutManager(new LinearLayoutManager(mThemedContext));
+                list.setAdapter(adapter);
+                showItem(adapter, item);
+
+                ForecastAdapter.ForecastAdapterViewHolder holder =
+                        adapter.createViewHolder(list, ForecastAdapter.VIEW_TYPE_FUTURE_DAY_FLAT);
+                adapter.bindViewHolder(holder, 0);
+                assertNotNull("Error: the flat row wasn't created", holder.mRowView);
+            }
+        });
+    }
+
+    /*
+        A row that's no longer in the list, like one animating out after its day was removed,
+        has no adapter position, and clicking it does nothing.
+     */
+    public void testClickRowWithoutPosition() throws Throwable {
+        final ForecastItem item = createItem(800, "Clear");
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ForecastAdapter adapter = createAdapter();
+                adapter.setUseTodayLayout(false);
+                showItem(adapter, item);
+                RecyclerView list = new RecyclerView(mThemedContext);
+                list.setLayoutManager(new LinearLayoutManager(mThemedContext));
+                ForecastAdapter.ForecastAdapterViewHolder holder =
+                        adapter.createViewHolder(list, ForecastAdapter.VIEW_TYPE_FUTURE_DAY);
+                adapter.bindViewHolder(holder, 0);
+                assertEquals(RecyclerView.NO_POSITION, holder.getAdapterPosition());
+                holder.onClick(holder.itemView);
+            }
+        });
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.database.MatrixCursor;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.DayMath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestForecastDiff extends AndroidTestCase {
+
+    // Named after the forecast columns; only the order matters to ForecastItem
+    private static final String[] COLUMNS = {"_id", "date", "short_desc", "max", "min",
+            "location_setting", "weather_id", "coord_lat", "coord_long", "humidity", "pressure",
+            "wind", "degrees"};
+
+    private final long mToday = DayMath.toEpochDay(System.currentTimeMillis());
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSavedUnits = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(mContext.getString(R.string.pref_units_key), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setUnits(mSavedUnits);
+        super.tearDown();
+    }
+
+    private void setUnits(String units) {
+        String key = mContext.getString(R.string.pref_units_key);
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        if (units == null) {
+            editor.remove(key);
+        } else {
+            editor.putString(key, units);
+        }
+        editor.commit();
+        SettingsSnapshot.refresh(mContext);
+    }
+
+    /*
+        Items for the given days from today, each with the given high.
+     */
+    private List<ForecastItem> createItems(int firstDay, int lastDay, double high) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = firstDay; day <= lastDay; day++) {
+            cursor.addRow(new Object[] {day, DayMath.startOfDay(mToday + day), "Clear", high, 10.0,
+                    "99705", 800, "64.7488", "-147.353", 80.0, 1013.0, 3.5, 90.0});
+        }
+        List<ForecastItem> items = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            items.add(new ForecastItem(mContext, cursor, true));
+        }
+        cursor.close();
+        return items;
+    }
+
+    public void testUnchanged() {
+        ForecastDiff diff = ForecastDiff.compute(createItems(0, 13, 20.0),
+                createItems(0, 13, 20.0));
+        assertEquals("Error: an unchanged forecast should notify nothing", "", diff.describeOps());
+        assertEquals(14, diff.getRebindsSaved());
+    }
+
+    /*
+        What a sync the next day does: yesterday drops off the top and a new day appears at the
+        bottom, and nothing in between needs binding again.
+     */
+    public void testNextDay() {
+        ForecastDiff diff = ForecastDiff.compute(createItems(-1, 12, 20.0),
+                createItems(0, 13, 20.0));
+        assertEquals("-0x1 +13x1", diff.describeOps());
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(1, diff.getInsertedCount());
+        assertEquals(0, diff.getChangedCount());
+        assertEquals(13, diff.getRebindsSaved());
+    }
+
+    public void testChangedDays() {
+        List<ForecastItem> from = createItems(0, 13, 20.0);
+        List<ForecastItem> to = new ArrayList<>(from);
+        to.subList(3, 6).clear();
+        to.addAll(3, createItems(3, 5, 25.0));
+        to.set(9, createItems(9, 9, 15.0).get(0));
+
+        ForecastDiff diff = ForecastDiff.compute(from, to);
+        assertEquals("~3x3 ~9x1", diff.describeOps());
+        assertEquals(10, diff.getRebindsSaved());
+    }
+
+    public void testGapsAndEnds() {
+        List<ForecastItem> from = createItems(0, 9, 20.0);
+        from.subList(4, 6).clear();
+        List<ForecastItem> to = createItems(2, 11, 20.0);
+        to.subList(1, 2).clear();
+
+        // from: 0 1 2 3 6 7 8 9, to: 2 4 5 6 7 8 9 10 11
+        ForecastDiff diff = ForecastDiff.compute(from, to);
+        assertEquals("-0x2 -1x1 +1x2 +7x2", diff.describeOps());
+    }
+
+    public void testFromAndToEmpty() {
+        List<ForecastItem> empty = Collections.emptyList();
+        assertEquals("+0x14", ForecastDiff.compute(empty, createItems(0, 13, 20.0)).describeOps());
+        assertEquals("-0x14", ForecastDiff.compute(createItems(0, 13, 20.0), empty).describeOps());
+        assertEquals("", ForecastDiff.compute(empty, empty).describeOps());
+    }
+
+    /*
+        A change of units formats the same days again, without reading them back: every row
+        needs binding again, and nothing but the formatting differs.
+     */
+    public void testUnitsChanged() {
+        setUnits(mContext.getString(R.string.pref_units_metric));
+        List<ForecastItem> from = createItems(0, 13, 20.0);
+        assertTrue(from.get(0).isFormattedFor(SettingsSnapshot.get(mContext)));
+
+        setUnits(mContext.getString(R.string.pref_units_imperial));
+        assertFalse("Error: an item should know its units are out of date",
+                from.get(0).isFormattedFor(SettingsSnapshot.get(mContext)));
+        List<ForecastItem> to = new ArrayList<>();
+        for (ForecastItem item : from) {
+            to.add(new ForecastItem(mContext, item));
+        }
+        assertTrue(to.get(0).isFormattedFor(SettingsSnapshot.get(mContext)));
+        assertEquals(from.get(0).high, to.get(0).high);
+        assertEquals(from.get(0).dayText, to.get(0).dayText);
+        assertFalse("Error: the high should be in the new units",
+                from.get(0).highText.equals(to.get(0).highText));
+        assertEquals("~0x14", ForecastDiff.compute(from, to).describeOps());
+    }
+}
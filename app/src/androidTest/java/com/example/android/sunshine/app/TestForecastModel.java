@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.DayMath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestForecastModel extends AndroidTestCase {
+
+    // Named after the forecast columns; only the order matters to ForecastItem
+    private static final String[] COLUMNS = {"_id", "date", "short_desc", "max", "min",
+            "location_setting", "weather_id", "coord_lat", "coord_long", "humidity", "pressure",
+            "wind", "degrees"};
+
+    private static final String LOCATION = "99705";
+
+    private final long mToday = DayMath.toEpochDay(System.currentTimeMillis());
+
+    private List<ForecastItem> createItems(int days) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = 0; day < days; day++) {
+            cursor.addRow(new Object[] {day, DayMath.startOfDay(mToday + day), "Clear", 20.0, 10.0,
+                    LOCATION, 800, "64.7488", "-147.353", 80.0 + day, 1013.0, 3.5, 90.0});
+        }
+        List<ForecastItem> items = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            items.add(new ForecastItem(mContext, cursor, true));
+        }
+        cursor.close();
+        return items;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastModel.publish(null, Collections.<ForecastItem>emptyList());
+        super.tearDown();
+    }
+
+    public void testFind() {
+        List<ForecastItem> items = createItems(14);
+        ForecastModel.publish(LOCATION, items);
+
+        for (int day = 0; day < 14; day++) {
+            assertSame("Error: day " + day + " wasn't found", items.get(day),
+                    ForecastModel.find(LOCATION, DayMath.startOfDay(mToday + day)));
+        }
+        assertEquals(85.0f, ForecastModel.find(LOCATION, DayMath.startOfDay(mToday + 5)).humidity);
+        assertNull("Error: a day the list doesn't have should need a query",
+                ForecastModel.find(LOCATION, DayMath.startOfDay(mToday + 14)));
+        assertNull("Error: another location's day should need a query",
+                ForecastModel.find("94043", DayMath.startOfDay(mToday)));
+    }
+
+    public void testListenersHearEachLoad() {
+        final int[] heard = new int[1];
+        ForecastModel.Listener listener = new ForecastModel.Listener() {
+            @Override
+            public void onForecastChanged() {
+                heard[0]++;
+            }
+        };
+        ForecastModel.addListener(listener);
+        ForecastModel.publish(LOCATION, createItems(3));
+        ForecastModel.removeListener(listener);
+        ForecastModel.publish(LOCATION, createItems(3));
+        assertEquals(1, heard[0]);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.DayMath;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+public class TestFormatters extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestFormatters.class.getSimpleName();
+
+    private static final int ROWS = 14;
+
+    private Locale mDefaultLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = Locale.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mDefaultLocale);
+        Formatters.invalidate();
+        super.tearDown();
+    }
+
+    /*
+        The cached temperatures must read exactly as String.format has them, including halves
+        (which it rounds away from zero) and "-0".
+     */
+    public void testTemperatureMatchesFormat() {
+        Formatters.Strings strings = Formatters.strings(mContext);
+        String format = mContext.getString(R.string.format_temperature);
+        for (int centi = -12000; centi <= 16000; centi++) {
+            double celsius = centi / 100.0;
+            double fahrenheit = celsius * 1.8 + 32;
+            assertEquals(String.format(format, celsius), strings.formatTemperature(celsius));
+            assertEquals(String.format(format, fahrenheit), strings.formatTemperature(fahrenheit));
+        }
+        assertEquals(String.format(format, -0.0), strings.formatTemperature(-0.0));
+    }
+
+    public void testDatesMatchSimpleDateFormat() {
+        for (Locale locale : new Locale[] {Locale.US, Locale.FRANCE, new Locale("ar")}) {
+            Locale.setDefault(locale);
+            long day = DayMath.normalize(System.currentTimeMillis());
+            for (int i = 0; i < 30; i++, day += DayMath.DAY_IN_MILLIS) {
+                assertEquals(new SimpleDateFormat("EEE MMM dd").format(day),
+                        Formatters.dates().formatShortDate(day));
+                assertEquals(new SimpleDateFormat("EEEE").format(day),
+                        Formatters.dates().formatDayName(day));
+                assertEquals(new SimpleDateFormat("MMMM dd").format(day),
+                        Formatters.dates().formatMonthDay(day));
+            }
+        }
+    }
+
+    public void testLocaleChangeRebuilds() {
+        Locale.setDefault(Locale.US);
+        Formatters.Dates us = Formatters.dates();
+        assertSame(us, Formatters.dates());
+        Locale.setDefault(Locale.FRANCE);
+        assertNotSame("Error: formats should be rebuilt for a new locale", us,
+                Formatters.dates());
+        Formatters.Dates france = Formatters.dates();
+        Formatters.invalidate();
+        assertNotSame("Error: formats should be rebuilt once invalidated", france,
+                Formatters.dates());
+    }
+
+    // The date and temperature formatting for one list row, as it was done before Formatters
+    private String legacyFormatRow(long date, double high, double low) {
+        String day;
+        int daysFromToday = DayMath.daysBetween(System.currentTimeMillis(), date);
+        if (daysFromToday == 0) {
+            day = String.format(mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today),
+                    new SimpleDateFormat("MMMM dd").format(date)));
+        } else if (daysFromToday == 1) {
+            day = mContext.getString(R.string.tomorrow);
+        } else if (daysFromToday < 7) {
+            day = new SimpleDateFormat("EEEE").format(date);
+        } else {
+            day = new SimpleDateFormat("EEE MMM dd").format(date);
+        }
+        String format = mContext.getString(R.string.format_temperature);
+        return day + String.format(format, high) + String.format(format, low);
+    }
+
+    private String formatRow(long date, double high, double low) {
+        return Utility.getFriendlyDayString(mContext, date, true)
+                + Utility.formatTemperature(mContext, high)
+                + Utility.formatTemperature(mContext, low);
+    }
+
+    /*
+        Not a pass/fail test: objects allocated formatting a 14 row list, before and after.
+        Results go to logcat.
+     */
+    @SuppressWarnings("deprecation")
+    public void testListBindAllocations() {
+        long today = DayMath.normalize(System.currentTimeMillis());
+        // Warm both up, so class loading and the caches being filled aren't counted
+        for (int i = 0; i < ROWS; i++) {
+            legacyFormatRow(today + i * DayMath.DAY_IN_MILLIS, 21.5 + i, 10.25 - i);
+            formatRow(today + i * DayMath.DAY_IN_MILLIS, 21.5 + i, 10.25 - i);
+        }
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < ROWS; i++) {
+                legacyFormatRow(today + i * DayMath.DAY_IN_MILLIS, 21.5 + i, 10.25 - i);
+            }
+            int legacyAllocations = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < ROWS; i++) {
+                formatRow(today + i * DayMath.DAY_IN_MILLIS, 21.5 + i, 10.25 - i);
+            }
+            int allocations = Debug.getThreadAllocCount();
+
+            Log.i(LOG_TAG, ROWS + " rows: " + legacyAllocations + " allocations before, "
+                    + allocations + " with Formatters");
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mSavedUnits == null) {
+            editor.remove(mUnitsKey);
+        } else {
+            editor.putString(mUnitsKey, mSavedUnits);
+        }
+        editor.commit();
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    /*
+        A snapshot never changes underneath its reader; the next one has the new value, and the
+        Utility helpers read through it.
+     */
+    public void testRefreshAfterWrite() {
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_metric))
+                .commit();
+        SettingsSnapshot.refresh(mContext);
+        SettingsSnapshot metric = SettingsSnapshot.get(mContext);
+        assertTrue(metric.metric);
+        assertTrue(Utility.isMetric(mContext));
+
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        SettingsSnapshot.refresh(mContext);
+        assertTrue("Error: a snapshot changed after it was taken", metric.metric);
+        assertFalse(SettingsSnapshot.get(mContext).metric);
+        assertFalse(Utility.isMetric(mContext));
+        assertEquals("Error: the snapshot should be shared until something changes",
+                SettingsSnapshot.get(mContext), SettingsSnapshot.get(mContext));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestStartupOrchestrator extends AndroidTestCase {
+
+    private final List<String> mRan = new CopyOnWriteArrayList<>();
+
+    private StartupOrchestrator.Step step(final String name, final boolean succeeds) {
+        return new StartupOrchestrator.Step() {
+            @Override
+            public boolean run() {
+                // Asserting here would throw on the startup thread, so it's recorded instead
+                mRan.add(Looper.myLooper() == Looper.getMainLooper() ? name + " on main" : name);
+                return succeeds;
+            }
+        };
+    }
+
+    /*
+        Steps run in order, and a failed step takes everything depending on it, directly or not,
+        with it.
+     */
+    public void testDependencies() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new StartupOrchestrator()
+                .add("a", step("a", true))
+                .add("b", step("b", false))
+                .add("c", step("c", true), "a")
+                .add("d", step("d", true), "b")
+                .add("e", step("e", true), "a", "d")
+                .add("done", new StartupOrchestrator.Step() {
+                    @Override
+                    public boolean run() {
+                        done.countDown();
+                        return true;
+                    }
+                })
+                .start();
+        assertTrue("Error: steps didn't finish", done.await(5, TimeUnit.SECONDS));
+        assertEquals("[a, b, c]", mRan.toString());
+    }
+
+    public void testDependencyMustBeAddedFirst() {
+        try {
+            new StartupOrchestrator()
+                    .add("a", step("a", true), "b")
+                    .add("b", step("b", true));
+            fail("Error: a step depending on one not yet added should be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
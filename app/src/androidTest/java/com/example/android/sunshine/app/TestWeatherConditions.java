@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.weather.WeatherConditions;
+
+public class TestWeatherConditions extends AndroidTestCase {
+
+    /*
+        weather-core names the descriptions; Utility keeps the matching string resources in an
+        array of its own, which has to stay in the same order.
+     */
+    public void testDescriptionResourcesMatchNames() {
+        assertEquals("Error: Utility should have a string for every description",
+                WeatherConditions.getDescriptionCount(), Utility.DESCRIPTION_RESOURCES.length);
+        for (int i = 0; i < Utility.DESCRIPTION_RESOURCES.length; i++) {
+            String name = WeatherConditions.getDescriptionName(i);
+            int expected = mContext.getResources().getIdentifier(name, "string",
+                    mContext.getPackageName());
+            assertEquals("Error: description " + i + " should be R.string." + name,
+                    expected, Utility.DESCRIPTION_RESOURCES[i]);
+        }
+    }
+}
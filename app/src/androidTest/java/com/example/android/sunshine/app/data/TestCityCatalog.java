@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Random;
+
+public class TestCityCatalog extends AndroidTestCase {
+
+    private static final Object[][] CITIES = {
+            {2643743, "London", "GB", 51.50853, -0.12574},
+            {6058560, "London", "CA", 42.98339, -81.23304},
+            {5375480, "Mountain View", "US", 37.38605, -122.08385},
+            {2988507, "Paris", "FR", 48.85341, 2.3488},
+            {4717560, "Paris", "US", 33.66094, -95.55551},
+            {2980291, "Saint-\u00c9tienne", "FR", 45.43389, 4.39},
+            {5866583, "North Pole", "US", 64.75111, -147.34944},
+            {2193733, "Auckland", "NZ", -36.84853, 174.76349},
+            {4031574, "Suva", "FJ", -18.14161, 178.44149},
+            {3833367, "Ushuaia", "AR", -54.8, -68.3},
+    };
+
+    private File mFile;
+
+    private CityCatalog writeCatalog(CityCatalogWriter writer) throws Exception {
+        mFile = new File(mContext.getCacheDir(), "test_" + CityCatalog.ASSET_NAME);
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            writer.write(out);
+        } finally {
+            out.close();
+        }
+        return CityCatalog.open(mFile);
+    }
+
+    private CityCatalog writeTestCatalog() throws Exception {
+        CityCatalogWriter writer = new CityCatalogWriter();
+        for (Object[] city : CITIES) {
+            writer.add((Integer) city[0], (String) city[1], (String) city[2],
+                    (Double) city[3], (Double) city[4]);
+        }
+        return writeCatalog(writer);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mFile != null) mFile.delete();
+        super.tearDown();
+    }
+
+    public void testPrefixSearch() throws Exception {
+        CityCatalog catalog = writeTestCatalog();
+        assertEquals(CITIES.length, catalog.size());
+
+        List<CityCatalog.City> results = catalog.search("lon", 10);
+        assertEquals("Error: both Londons should match", 2, results.size());
+        assertEquals("London", results.get(0).name);
+
+        assertEquals(1, catalog.search("London, g", 10).size());
+        assertEquals("GB", catalog.search("London, g", 10).get(0).country);
+        assertEquals(1, catalog.search("mountain v", 10).size());
+        assertEquals("Error: accents and punctuation shouldn't matter",
+                "Saint-\u00c9tienne", catalog.search("saint eti", 10).get(0).name);
+        assertEquals(0, catalog.search("zzz", 10).size());
+        assertEquals(0, catalog.search("", 10).size());
+        assertEquals(1, catalog.search("pa", 1).size());
+    }
+
+    public void testFindExact() throws Exception {
+        CityCatalog catalog = writeTestCatalog();
+        assertNull("Error: an ambiguous name should not resolve", catalog.findExact("Paris"));
+
+        CityCatalog.City paris = catalog.findExact("paris,FR");
+        assertNotNull(paris);
+        assertEquals(2988507, paris.id);
+        assertEquals("Paris,FR", paris.getLocationSetting());
+        assertEquals(48.85341, paris.lat, 1e-5);
+        assertEquals(2.3488, paris.lon, 1e-5);
+
+        assertEquals(5375480, catalog.findExact("Mountain View").id);
+        assertNull(catalog.findExact("94043"));
+        assertNull(catalog.findExact("Mountain"));
+    }
+
+    public void testFindNearest() throws Exception {
+        CityCatalog catalog = writeTestCatalog();
+        assertEquals("London", catalog.findNearest(51.4, 0.1).name);
+        assertEquals("Mountain View", catalog.findNearest(37.42, -122.1).name);
+        // Across the antimeridian, Suva is closer than Auckland
+        assertEquals("Suva", catalog.findNearest(-17.0, -179.5).name);
+        // Far from everything, the search has to widen a long way
+        assertEquals("Ushuaia", catalog.findNearest(-89.0, -60.0).name);
+    }
+
+    /*
+        Checks the grid search against a brute force scan over a catalog big enough to spread
+        across most of the grid.
+     */
+    public void testFindNearestMatchesBruteForce() throws Exception {
+        Random random = new Random(42);
+        CityCatalogWriter writer = new CityCatalogWriter();
+        double[][] points = new double[5000][];
+        for (int i = 0; i < points.length; i++) {
+            // Cluster most cities in the mid latitudes like the real list
+            double lat = random.nextInt(4) == 0 ? random.nextDouble() * 180 - 90
+                    : random.nextGaussian() * 20 + 35;
+            lat = Math.max(-90, Math.min(90, lat));
+            double lon = random.nextDouble() * 360 - 180;
+            points[i] = new double[]{lat, lon};
+            writer.add(i, "City " + i, "XX", lat, lon);
+        }
+        CityCatalog catalog = writeCatalog(writer);
+
+        for (int q = 0; q < 500; q++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            double best = Double.MAX_VALUE;
+            for (double[] point : points) {
+                best = Math.min(best, CityCatalog.distanceKm(lat, lon, point[0], point[1]));
+            }
+            CityCatalog.City city = catalog.findNearest(lat, lon);
+            assertEquals("Error: wrong nearest city for " + lat + "," + lon, best,
+                    CityCatalog.distanceKm(lat, lon, city.lat, city.lon), 0.01);
+        }
+    }
+
+    public void testMissingAssetIsEmpty() {
+        // No catalog is packaged with the test build, or a real one is; either way it must open
+        CityCatalog catalog = CityCatalog.getInstance(mContext);
+        assertNotNull(catalog);
+        if (catalog.size() == 0) {
+            assertNull(catalog.findExact("London,GB"));
+            assertNull(catalog.findNearest(0, 0));
+            assertEquals(0, catalog.search("lon", 10).size());
+        }
+    }
+}
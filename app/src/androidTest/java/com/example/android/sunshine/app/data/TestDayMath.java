@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.TimeZone;
+
+public class TestDayMath extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDayMath.class.getSimpleName();
+
+    // Ordinary DST, half hour DST, DST at midnight, no DST, a skipped day (Apia, end of 2011),
+    // DST that moved around a lot, and odd offsets
+    private static final String[] ZONES = {
+            "America/Los_Angeles", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo",
+            "Asia/Kolkata", "Pacific/Apia", "America/Santiago", "Asia/Tehran", "Pacific/Chatham",
+            "America/Havana", "UTC"};
+
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000;
+
+    private TimeZone mDefaultZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(mDefaultZone);
+        DayMath.invalidate();
+        super.tearDown();
+    }
+
+    // WeatherContract.normalizeDate as it was written with Time
+    private static long legacyNormalizeDate(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    private static int legacyJulianDay(long millis) {
+        Time time = new Time();
+        time.set(millis);
+        return Time.getJulianDay(millis, time.gmtoff);
+    }
+
+    private static boolean hasLocalMidnight(long epochDay, TimeZone zone) {
+        // Either side of a transition, see whether either offset puts an instant at midnight
+        long local = epochDay * DayMath.DAY_IN_MILLIS;
+        int before = zone.getOffset(local - DayMath.DAY_IN_MILLIS);
+        int after = zone.getOffset(local + DayMath.DAY_IN_MILLIS);
+        return before == after
+                || (zone.getOffset(local - before) == before
+                    && zone.getOffset(local - after) != after)
+                || (zone.getOffset(local - after) == after
+                    && zone.getOffset(local - before) != before);
+    }
+
+    /*
+        Walks every zone in 37 minute steps across 2009 to 2020, with the table centered on a
+        few different years so both the table and its fallback are used, and checks the day and
+        its start against the Time based code.  Where a daylight saving change skips or repeats
+        midnight, Time's answer isn't a midnight at all, so there it's only held to the same day.
+     */
+    public void testMatchesTime() {
+        long checked = 0;
+        for (String zoneId : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(zoneId);
+            TimeZone.setDefault(zone);
+            for (int year = 2010; year <= 2019; year += 3) {
+                Time center = new Time(Time.TIMEZONE_UTC);
+                center.set(1, 6, year);
+                DayMath.rebuildAround(center.toMillis(false));
+                long start = center.toMillis(false) - 548 * DayMath.DAY_IN_MILLIS;
+                long end = center.toMillis(false) + 548 * DayMath.DAY_IN_MILLIS;
+                for (long millis = start; millis < end; millis += 37 * 60 * 1000) {
+                    long expectedDay = legacyJulianDay(millis) - Time.EPOCH_JULIAN_DAY;
+                    long day = DayMath.toEpochDay(millis);
+                    assertEquals("Error: wrong day in " + zoneId + " at " + millis,
+                            expectedDay, day);
+
+                    long expected = legacyNormalizeDate(millis);
+                    long normalized = DayMath.normalize(millis);
+                    if (hasLocalMidnight(day, zone)) {
+                        assertEquals("Error: wrong start of day in " + zoneId + " at " + millis,
+                                expected, normalized);
+                    } else {
+                        assertEquals("Error: start of day outside the day in " + zoneId,
+                                day, DayMath.toEpochDay(normalized));
+                        assertTrue(normalized <= millis);
+                    }
+                    checked++;
+                }
+            }
+        }
+        Log.d(LOG_TAG, "Checked " + checked + " instants");
+    }
+
+    /*
+        Every instant of a day lies at or after its start and before the next day's start, even
+        on the days that daylight saving changes make 23 or 25 hours long.
+     */
+    public void testStartOfDayBoundsTheDay() {
+        for (String zoneId : ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zoneId));
+            DayMath.invalidate();
+            long today = DayMath.toEpochDay(System.currentTimeMillis());
+            for (long day = today - 400; day < today + 400; day++) {
+                long start = DayMath.startOfDay(day);
+                long next = DayMath.startOfDay(day + 1);
+                if (next == start) {
+                    // A day skipped entirely, like Apia's 30 December 2011
+                    continue;
+                }
+                assertEquals(day, DayMath.toEpochDay(start));
+                assertEquals(day, DayMath.toEpochDay(next - 1));
+                assertTrue("Error: odd day length in " + zoneId,
+                        next - start >= 22 * HOUR_IN_MILLIS && next - start <= 26 * HOUR_IN_MILLIS);
+            }
+        }
+    }
+
+    public void testDaysBetween() {
+        long now = System.currentTimeMillis();
+        long today = DayMath.normalize(now);
+        assertEquals(0, DayMath.daysBetween(now, today));
+        assertEquals(1, DayMath.daysBetween(now, DayMath.startOfDay(DayMath.toEpochDay(now) + 1)));
+        assertEquals(-1, DayMath.daysBetween(now, today - 1));
+        assertEquals(7,
+                DayMath.daysBetween(today, DayMath.startOfDay(DayMath.toEpochDay(now) + 7)));
+    }
+
+    /*
+        Switching zones must not leave the old zone's offsets behind once invalidated.
+     */
+    public void testInvalidate() {
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        DayMath.invalidate();
+        long now = System.currentTimeMillis();
+        assertEquals(5 * HOUR_IN_MILLIS + 30 * 60 * 1000, DayMath.getOffset(now));
+
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        DayMath.invalidate();
+        assertEquals(0, DayMath.getOffset(now));
+        assertEquals(0, DayMath.normalize(now) % DayMath.DAY_IN_MILLIS);
+    }
+
+    /*
+        Not a pass/fail test, just a quick comparison of the cost per date normalized, as seen
+        from a bulk insert or a list bind.  Results go to logcat.
+     */
+    public void testNormalizeBenchmark() {
+        final int iterations = 20000;
+        final long base = System.currentTimeMillis();
+        long sink = 0;
+
+        // Warm both paths up first
+        for (int i = 0; i < 2000; i++) {
+            sink += legacyNormalizeDate(base + i * HOUR_IN_MILLIS);
+            sink += DayMath.normalize(base + i * HOUR_IN_MILLIS);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += legacyNormalizeDate(base + i * HOUR_IN_MILLIS);
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += DayMath.normalize(base + i * HOUR_IN_MILLIS);
+        }
+        long dayMathNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "normalizeDate: Time " + legacyNanos / iterations + "ns, DayMath "
+                + dayMathNanos / iterations + "ns per call (" + sink + ")");
+    }
+}
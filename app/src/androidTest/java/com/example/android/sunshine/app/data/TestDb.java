@@ -17,6 +17,7 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
@@ -144,14 +145,15 @@ public class TestDb extends AndroidTestCase {
         // Second Step (Weather): Create weather values
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
-        // Third Step (Weather): Insert ContentValues into database and get a row ID back
-        long weatherRowId = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+        // Third Step (Weather): Insert ContentValues into database and get a row ID back.
+        // Weather is stored compactly, so it goes in through WeatherEncoding
+        long weatherRowId = WeatherEncoding.insertWeather(db, weatherValues, null);
         assertTrue(weatherRowId != -1);
 
         // Fourth Step: Query the database and receive a Cursor back
         // A cursor is your primary interface to the query results.
         Cursor weatherCursor = db.query(
-                WeatherContract.WeatherEntry.TABLE_NAME,  // Table to Query
+                WeatherEncoding.VIEW_NAME,  // Table to Query
                 null, // leaving "columns" null just returns all the columns.
                 null, // cols for "where" clause
                 null, // values for "where" clause
@@ -234,4 +236,70 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        The aggregate and forecast queries narrow by location first and then by a date range, so
+        make sure SQLite answers that with an index search rather than a scan of the weather table.
+     */
+    public void testWeatherRangeUsesIndex() {
+        SQLiteDatabase db = new WeatherDbHelper(this.mContext).getReadableDatabase();
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN SELECT COUNT(*) FROM " +
+                WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ?",
+                new String[]{"1", "0", "1"});
+
+        assertTrue("Error: unable to explain the weather range query", c.moveToFirst());
+        String detail = c.getString(c.getColumnIndex("detail"));
+        assertTrue("Error: the weather range query doesn't use an index: " + detail,
+                detail.startsWith("SEARCH") && detail.contains("INDEX"));
+        c.close();
+        db.close();
+    }
+
+    /*
+        Weather measurements should be stored as scaled integers and the description once per
+        weather id, and still read back through the view as the values that went in.
+     */
+    public void testCompactStorage() {
+        long locationRowId = insertLocation();
+        SQLiteDatabase db = new WeatherDbHelper(this.mContext).getWritableDatabase();
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 21.57);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, -3.2);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1013.25);
+        assertTrue(WeatherEncoding.insertWeather(db, weatherValues, null) != -1);
+        ContentValues nextDay = new ContentValues(weatherValues);
+        nextDay.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                TestUtilities.TEST_DATE + DayMath.DAY_IN_MILLIS);
+        assertTrue(WeatherEncoding.insertWeather(db, nextDay, null) != -1);
+
+        Cursor c = db.rawQuery("SELECT typeof(" + WeatherEncoding.COLUMN_MAX_CENTI + "), " +
+                WeatherEncoding.COLUMN_MAX_CENTI + ", " + WeatherEncoding.COLUMN_MIN_CENTI + ", " +
+                WeatherEncoding.COLUMN_PRESSURE_CENTI + " FROM " +
+                WeatherContract.WeatherEntry.TABLE_NAME, null);
+        assertTrue(c.moveToFirst());
+        assertEquals("integer", c.getString(0));
+        assertEquals(2157, c.getLong(1));
+        assertEquals(-320, c.getLong(2));
+        assertEquals(101325, c.getLong(3));
+        c.close();
+
+        assertEquals("Error: the description should be stored once per weather id", 1,
+                DatabaseUtils.queryNumEntries(db, WeatherEncoding.CONDITION_TABLE_NAME));
+
+        c = db.query(WeatherEncoding.VIEW_NAME, null, null, null, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(2, c.getCount());
+        assertTrue(c.moveToFirst());
+        assertEquals(21.57, c.getDouble(
+                c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)), 1e-9);
+        assertEquals(-3.2, c.getDouble(
+                c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)), 1e-9);
+        assertEquals("Asteroids", c.getString(
+                c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)));
+        c.close();
+        db.close();
+    }
 }
@@ -24,12 +24,18 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.MetricsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -160,6 +166,13 @@ public class TestProvider extends AndroidTestCase {
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
         assertEquals("Error: the LocationEntry CONTENT_URI should return LocationEntry.CONTENT_TYPE",
                 LocationEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/aggregate/94074?date=...&end_date=...
+        type = mContext.getContentResolver().getType(
+                AggregateEntry.buildAggregateUri(testLocation, testDate, testDate));
+        // vnd.android.cursor.dir/com.example.android.sunshine.app/aggregate
+        assertEquals("Error: the AggregateEntry uri should return AggregateEntry.CONTENT_TYPE",
+                AggregateEntry.CONTENT_TYPE, type);
     }
 
 
@@ -179,7 +192,7 @@ public class TestProvider extends AndroidTestCase {
         // Fantastic.  Now that we have a location, add some weather!
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
-        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = WeatherEncoding.insertWeather(db, weatherValues, null);
         assertTrue("Unable to Insert WeatherEntry into the Database", weatherRowId != -1);
 
         db.close();
@@ -422,6 +435,80 @@ public class TestProvider extends AndroidTestCase {
     }
 
 
+    /*
+        Updates and deletes select weather by any of the contract's columns, including the
+        description and measurements the weather table only stores encoded.  Weather without a
+        description is refused, as it always was.
+     */
+    public void testWeatherSelectionsAndRequiredColumns() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        // The highs run from 75 to 84
+        ContentValues update = new ContentValues();
+        update.put(WeatherEntry.COLUMN_HUMIDITY, 50.0);
+        assertEquals("Error: updating by a decoded column", 5,
+                mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, update,
+                        WeatherEntry.COLUMN_MAX_TEMP + " >= ?", new String[]{"80"}));
+
+        assertEquals("Error: deleting by the description and a decoded column", 3,
+                mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                        WeatherEntry.COLUMN_SHORT_DESC + " = ? AND "
+                                + WeatherEntry.COLUMN_MAX_TEMP + " < ?",
+                        new String[]{"Asteroids", "78"}));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_HUMIDITY}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 3, cursor.getCount());
+        assertTrue(cursor.moveToLast());
+        assertEquals(50.0, cursor.getDouble(0), 0.001);
+        cursor.close();
+
+        // An update matching nothing leaves the shared description alone, and one that carries
+        // only a description gives it to the weather ids of the rows it matches
+        ContentValues description = new ContentValues();
+        description.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+        description.put(WeatherEntry.COLUMN_SHORT_DESC, "Comets");
+        assertEquals(0, mContext.getContentResolver().update(WeatherEntry.CONTENT_URI,
+                description, WeatherEntry.COLUMN_MAX_TEMP + " > ?", new String[]{"100"}));
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_SHORT_DESC}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: an update matching nothing changed the description",
+                "Asteroids", cursor.getString(0));
+        cursor.close();
+        description.remove(WeatherEntry.COLUMN_WEATHER_ID);
+        description.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        assertEquals("Error: updating only the description", 2,
+                mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, description,
+                        WeatherEntry.COLUMN_MAX_TEMP + " < ?", new String[]{"80"}));
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_SHORT_DESC}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        do {
+            assertEquals("Error: the description didn't follow the weather id",
+                    "Meteors", cursor.getString(0));
+        } while (cursor.moveToNext());
+        cursor.close();
+
+        ContentValues noDescription = TestUtilities.createWeatherValues(locationRowId);
+        noDescription.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE
+                + BULK_INSERT_RECORDS_TO_INSERT * 1000L * 60 * 60 * 24);
+        noDescription.remove(WeatherEntry.COLUMN_SHORT_DESC);
+        try {
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, noDescription);
+            fail("Error: weather without a description should be refused");
+        } catch (android.database.SQLException e) {
+            // expected
+        }
+        noDescription.putNull(WeatherEntry.COLUMN_SHORT_DESC);
+        assertEquals("Error: bulk inserted weather without a description", 0,
+                mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                        new ContentValues[]{noDescription}));
+    }
+
     static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
     static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
@@ -512,4 +599,400 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Checks the call() summaries against the same rows read through the regular weather uris.
+     */
+    public void testSummaryCalls() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] values = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+
+        Bundle extras = new Bundle();
+        extras.putLong(SummaryEntry.EXTRA_START_DATE, TestUtilities.TEST_DATE);
+        Bundle today = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                SummaryEntry.METHOD_GET_TODAY, TestUtilities.TEST_LOCATION, extras);
+        assertNotNull("Error: no summary for a location with weather", today);
+        assertEquals(WeatherContract.normalizeDate(values[0].getAsLong(WeatherEntry.COLUMN_DATE)),
+                today.getLong(SummaryEntry.KEY_DATE));
+        assertEquals(321, today.getInt(SummaryEntry.KEY_WEATHER_ID));
+        assertEquals("Asteroids", today.getString(SummaryEntry.KEY_SHORT_DESC));
+        assertEquals(75.0, today.getDouble(SummaryEntry.KEY_MAX_TEMP), 0.001);
+        assertEquals(65.0, today.getDouble(SummaryEntry.KEY_MIN_TEMP), 0.001);
+
+        // Start half way through the data and ask for more days than are left
+        extras.putLong(SummaryEntry.EXTRA_START_DATE,
+                values[BULK_INSERT_RECORDS_TO_INSERT / 2].getAsLong(WeatherEntry.COLUMN_DATE));
+        extras.putInt(SummaryEntry.EXTRA_DAY_COUNT, BULK_INSERT_RECORDS_TO_INSERT);
+        Bundle days = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                SummaryEntry.METHOD_GET_DAYS, TestUtilities.TEST_LOCATION, extras);
+        long[] dates = days.getLongArray(SummaryEntry.KEY_DATES);
+        double[] maxTemps = days.getDoubleArray(SummaryEntry.KEY_MAX_TEMPS);
+        double[] minTemps = days.getDoubleArray(SummaryEntry.KEY_MIN_TEMPS);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT / 2, dates.length);
+        assertEquals(dates.length, days.getIntArray(SummaryEntry.KEY_WEATHER_IDS).length);
+        assertEquals(dates.length, days.getStringArray(SummaryEntry.KEY_SHORT_DESCS).length);
+        for (int i = 0; i < dates.length; i++) {
+            ContentValues expected = values[BULK_INSERT_RECORDS_TO_INSERT / 2 + i];
+            assertEquals(WeatherContract.normalizeDate(
+                    expected.getAsLong(WeatherEntry.COLUMN_DATE)), dates[i]);
+            assertEquals(expected.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP), maxTemps[i], 0.001);
+            assertEquals(expected.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP), minTemps[i], 0.001);
+        }
+
+        // Unknown locations, and days past the data, come back empty
+        assertNull(mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                SummaryEntry.METHOD_GET_TODAY, "no-such-place", null));
+        extras.putLong(SummaryEntry.EXTRA_START_DATE, TestUtilities.TEST_DATE
+                + BULK_INSERT_RECORDS_TO_INSERT * 1000L * 60 * 60 * 24);
+        assertNull(mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                SummaryEntry.METHOD_GET_TODAY, TestUtilities.TEST_LOCATION, extras));
+    }
+
+    private long[] queryDates(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        long[] dates = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            dates[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return dates;
+    }
+
+    /*
+        Pages through the bulk insert data with limit/offset and with the after date keyset, and
+        checks both walk the same rows as the unpaged query.
+     */
+    public void testPagedQueries() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        Uri locationUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        long[] all = queryDates(locationUri);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, all.length);
+
+        assertEquals(3, queryDates(WeatherEntry.withLimit(locationUri, 3)).length);
+        assertEquals(3, queryDates(WeatherEntry.withLimit(WeatherEntry.CONTENT_URI, 3)).length);
+
+        final int pageSize = 4;
+        int seen = 0;
+        for (int offset = 0; offset < all.length; offset += pageSize) {
+            long[] page = queryDates(
+                    WeatherEntry.withLimitAndOffset(locationUri, pageSize, offset));
+            for (long date : page) {
+                assertEquals("Error: limit/offset paging out of step", all[seen++], date);
+            }
+        }
+        assertEquals(all.length, seen);
+
+        seen = 0;
+        Uri pageUri = WeatherEntry.withLimit(locationUri, pageSize);
+        long[] page = queryDates(pageUri);
+        while (page.length > 0) {
+            for (long date : page) {
+                assertEquals("Error: keyset paging out of step", all[seen++], date);
+            }
+            page = queryDates(WeatherEntry.withAfterDate(pageUri, page[page.length - 1]));
+        }
+        assertEquals(all.length, seen);
+
+        // The root uri pages the same way, on its own and under a selection of the caller's
+        seen = 0;
+        Uri rootPageUri = WeatherEntry.withLimit(WeatherEntry.CONTENT_URI, pageSize);
+        page = queryDates(rootPageUri);
+        while (page.length > 0) {
+            for (long date : page) {
+                assertEquals("Error: keyset paging of the root uri out of step", all[seen++], date);
+            }
+            page = queryDates(WeatherEntry.withAfterDate(rootPageUri, page[page.length - 1]));
+        }
+        assertEquals(all.length, seen);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.withAfterDate(WeatherEntry.CONTENT_URI, all[1]),
+                new String[]{WeatherEntry.COLUMN_DATE},
+                WeatherEntry.COLUMN_DATE + " <= ?", new String[]{Long.toString(all[3])},
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: after_date not combined with the caller's selection",
+                2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(all[2], cursor.getLong(0));
+        cursor.close();
+
+        try {
+            queryDates(WeatherEntry.withLimit(locationUri, -1));
+            fail("Error: a negative limit should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private int countSearchResults(String query) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri(query), null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    /*
+        Makes sure the location search uri finds locations by prefixes of their setting and city
+        name, follows updates and deletes of the location table, and survives hostile input.
+     */
+    public void testLocationSearch() {
+        String[][] places = {
+                {"94043", "Mountain View"},
+                {"London, UK", "London"},
+                {"Londrina", "Londrina"},
+                {"99705", "North Pole"}};
+        long londonId = -1;
+        for (String[] place : places) {
+            ContentValues values = TestUtilities.createNorthPoleLocationValues();
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, place[0]);
+            values.put(LocationEntry.COLUMN_CITY_NAME, place[1]);
+            long id = ContentUris.parseId(
+                    mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values));
+            if (place[1].equals("London")) londonId = id;
+        }
+
+        assertEquals("Error: prefix search on the city name", 2, countSearchResults("lond"));
+        assertEquals("Error: search should be case insensitive", 1, countSearchResults("MOUNT"));
+        assertEquals("Error: prefix search on the location setting", 1, countSearchResults("9404"));
+        assertEquals("Error: every word has to match", 1, countSearchResults("lon uk"));
+        assertEquals("Error: second word of the city name", 1, countSearchResults("pol"));
+        assertEquals("Error: unknown locations shouldn't match", 0, countSearchResults("paris"));
+
+        // None of these should reach FTS as syntax
+        assertEquals(0, countSearchResults("\""));
+        assertEquals(0, countSearchResults("*"));
+        assertEquals(2, countSearchResults("\"lond"));
+        assertEquals(0, countSearchResults("lond NOT don"));
+        assertEquals(0, countSearchResults("city_name:mount"));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("mount"), null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("94043", cursor.getString(
+                cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+
+        // The index follows the location table
+        ContentValues renamed = new ContentValues();
+        renamed.put(LocationEntry.COLUMN_CITY_NAME, "Greenwich");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, renamed,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(londonId)});
+        assertEquals(1, countSearchResults("green"));
+        // ...still found through its location setting, though
+        assertEquals(2, countSearchResults("lond"));
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(londonId)});
+        assertEquals(0, countSearchResults("green"));
+        assertEquals(1, countSearchResults("lond"));
+    }
+
+    static private final int AGGREGATE_DAYS_PER_LOCATION = 365;
+    static private final int[] AGGREGATE_WEATHER_IDS = {211, 321, 501, 602, 741, 800, 803};
+
+    static ContentValues createAggregateWeatherValues(long locationRowId, int day, int salt) {
+        long millisecondsInADay = 1000*60*60*24;
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * millisecondsInADay);
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, (day * 7 + salt) % 360);
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 40 + (day + salt) % 50);
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 990 + (day * 3 + salt) % 40);
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 10 + (day + salt) % 25);
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 2 + (day * 5 + salt) % 9);
+        weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, ((day + salt) % 13) * 1.5);
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID,
+                AGGREGATE_WEATHER_IDS[(day + salt) % AGGREGATE_WEATHER_IDS.length]);
+        return weatherValues;
+    }
+
+    /*
+        Inserts a year of weather for three locations and checks the aggregate uris against the
+        same statistics computed here over the raw values.  The other locations are there to make
+        sure the range scan doesn't leak rows from its neighbours.
+     */
+    public void testAggregateQueries() {
+        final String[] settings = {"99705", "94043", "10001"};
+        ContentValues[] northPole = null;
+        for (int l = 0; l < settings.length; l++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, settings[l]);
+            long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                    LocationEntry.CONTENT_URI, locationValues));
+
+            ContentValues[] values = new ContentValues[AGGREGATE_DAYS_PER_LOCATION];
+            for (int day = 0; day < AGGREGATE_DAYS_PER_LOCATION; day++) {
+                values[day] = createAggregateWeatherValues(locationRowId, day, l * 11);
+            }
+            assertEquals(AGGREGATE_DAYS_PER_LOCATION,
+                    mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values));
+            if (l == 0) northPole = values;
+        }
+
+        final int firstDay = 100;
+        final int lastDay = 199;
+        long startDate = WeatherContract.normalizeDate(
+                northPole[firstDay].getAsLong(WeatherEntry.COLUMN_DATE));
+        long endDate = WeatherContract.normalizeDate(
+                northPole[lastDay].getAsLong(WeatherEntry.COLUMN_DATE));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                AggregateEntry.buildAggregateUri(settings[0], startDate, endDate),
+                null, null, null, null);
+        assertTrue("Error: the aggregate query returned no rows", cursor.moveToFirst());
+        assertEquals("Error: an ungrouped aggregate should return a single row",
+                1, cursor.getCount());
+        assertTrue("Error: an ungrouped aggregate has no condition class", cursor.isNull(
+                cursor.getColumnIndex(AggregateEntry.COLUMN_CONDITION_CLASS)));
+        validateAggregate(cursor, northPole, firstDay, lastDay, -1);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                AggregateEntry.buildAggregateByConditionUri(settings[0], startDate, endDate),
+                null, null, null, null);
+        int lastConditionClass = -1;
+        int totalDays = 0;
+        assertTrue("Error: the grouped aggregate query returned no rows", cursor.moveToFirst());
+        do {
+            int conditionClass = cursor.getInt(
+                    cursor.getColumnIndex(AggregateEntry.COLUMN_CONDITION_CLASS));
+            assertTrue("Error: condition classes should be sorted", conditionClass > lastConditionClass);
+            lastConditionClass = conditionClass;
+            totalDays += validateAggregate(cursor, northPole, firstDay, lastDay, conditionClass);
+        } while (cursor.moveToNext());
+        assertEquals(lastDay - firstDay + 1, totalDays);
+        cursor.close();
+
+        // a range with no weather at all still produces one, empty, ungrouped row
+        cursor = mContext.getContentResolver().query(
+                AggregateEntry.buildAggregateUri("no-such-place", startDate, endDate),
+                new String[]{AggregateEntry.COLUMN_DAY_COUNT}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(0, cursor.getInt(0));
+        cursor.close();
+    }
+
+    private static int validateAggregate(Cursor cursor, ContentValues[] values,
+                                         int firstDay, int lastDay, int conditionClass) {
+        int count = 0;
+        double minTemp = Double.MAX_VALUE, maxTemp = -Double.MAX_VALUE, maxWind = -Double.MAX_VALUE;
+        double sumMin = 0, sumMax = 0, sumWind = 0, sumHumidity = 0, sumPressure = 0;
+        long firstDate = Long.MAX_VALUE, lastDate = Long.MIN_VALUE;
+        for (int day = firstDay; day <= lastDay; day++) {
+            ContentValues v = values[day];
+            if (conditionClass >= 0
+                    && v.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID) / 100 != conditionClass) {
+                continue;
+            }
+            count++;
+            double min = v.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            double max = v.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            double wind = v.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            minTemp = Math.min(minTemp, min);
+            maxTemp = Math.max(maxTemp, max);
+            maxWind = Math.max(maxWind, wind);
+            sumMin += min;
+            sumMax += max;
+            sumWind += wind;
+            sumHumidity += v.getAsDouble(WeatherEntry.COLUMN_HUMIDITY);
+            sumPressure += v.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+            long date = WeatherContract.normalizeDate(v.getAsLong(WeatherEntry.COLUMN_DATE));
+            firstDate = Math.min(firstDate, date);
+            lastDate = Math.max(lastDate, date);
+        }
+        final double delta = 0.0001;
+        assertEquals(count, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_DAY_COUNT)));
+        assertEquals(firstDate, cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_FIRST_DATE)));
+        assertEquals(lastDate, cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_LAST_DATE)));
+        assertEquals(minTemp, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MIN_TEMP)), delta);
+        assertEquals(maxTemp, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MAX_TEMP)), delta);
+        assertEquals(maxWind, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MAX_WIND_SPEED)), delta);
+        assertEquals(sumMin / count, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_AVG_MIN_TEMP)), delta);
+        assertEquals(sumMax / count, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_AVG_MAX_TEMP)), delta);
+        assertEquals(sumWind / count, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_AVG_WIND_SPEED)), delta);
+        assertEquals(sumHumidity / count, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_AVG_HUMIDITY)), delta);
+        assertEquals(sumPressure / count, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_AVG_PRESSURE)), delta);
+        return count;
+    }
+
+    private Bundle callMetrics(String method, Bundle extras) {
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI, method,
+                null, extras);
+    }
+
+    private static Bundle findOperation(Bundle metrics, String operation, int match) {
+        ArrayList<Bundle> operations =
+                metrics.getParcelableArrayList(MetricsEntry.KEY_OPERATIONS);
+        for (Bundle stats : operations) {
+            if (operation.equals(stats.getString(MetricsEntry.KEY_OPERATION))
+                    && match == stats.getInt(MetricsEntry.KEY_MATCH)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    /*
+        Runs a few operations and checks the provider's metrics dump counts them against the
+        right uri match, with the right rows, and samples them with a query plan once the slow
+        threshold is dropped to nothing.
+     */
+    public void testProviderMetrics() {
+        Bundle thresholds = new Bundle();
+        thresholds.putLong(MetricsEntry.EXTRA_SLOW_READ_NANOS, 0);
+        thresholds.putLong(MetricsEntry.EXTRA_SLOW_WRITE_NANOS, Long.MAX_VALUE);
+        callMetrics(MetricsEntry.METHOD_RESET_METRICS, thresholds);
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        Uri locationUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, queryDates(locationUri).length);
+        }
+
+        Bundle metrics = callMetrics(MetricsEntry.METHOD_DUMP_METRICS, null);
+        Bundle insert = findOperation(metrics, "insert", WeatherProvider.LOCATION);
+        assertNotNull("Error: the location insert wasn't recorded", insert);
+        assertEquals(1, insert.getLong(MetricsEntry.KEY_COUNT));
+        Bundle bulkInsert = findOperation(metrics, "bulkInsert", WeatherProvider.WEATHER);
+        assertNotNull("Error: the bulk insert wasn't recorded", bulkInsert);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, bulkInsert.getLong(MetricsEntry.KEY_ROWS));
+
+        Bundle query = findOperation(metrics, "query", WeatherProvider.WEATHER_WITH_LOCATION);
+        assertNotNull("Error: the weather queries weren't recorded", query);
+        assertEquals(3, query.getLong(MetricsEntry.KEY_COUNT));
+        assertEquals(3 * BULK_INSERT_RECORDS_TO_INSERT, query.getLong(MetricsEntry.KEY_ROWS));
+        assertTrue(query.getLong(MetricsEntry.KEY_MAX_NANOS) > 0);
+        long histogramTotal = 0;
+        for (long bucket : query.getLongArray(MetricsEntry.KEY_HISTOGRAM)) {
+            histogramTotal += bucket;
+        }
+        assertEquals(3, histogramTotal);
+
+        ArrayList<Bundle> samples = metrics.getParcelableArrayList(MetricsEntry.KEY_SLOW_SAMPLES);
+        assertEquals("Error: every query should have been sampled", 3, samples.size());
+        Bundle sample = samples.get(0);
+        assertEquals(locationUri.toString(), sample.getString(MetricsEntry.KEY_URI));
+        assertTrue("Error: the sample has no query plan",
+                sample.getString(MetricsEntry.KEY_PLAN).length() > 0);
+        assertTrue("Error: our own calls should be labelled as ours",
+                sample.getString(MetricsEntry.KEY_CALLER).startsWith("self:"));
+        assertTrue(metrics.getString(MetricsEntry.KEY_REPORT).length() > 0);
+
+        // Put the default thresholds back, and make sure the reset took
+        callMetrics(MetricsEntry.METHOD_RESET_METRICS, null);
+        metrics = callMetrics(MetricsEntry.METHOD_DUMP_METRICS, null);
+        assertEquals(0, metrics.getParcelableArrayList(MetricsEntry.KEY_OPERATIONS).size());
+        assertEquals(0, metrics.getParcelableArrayList(MetricsEntry.KEY_SLOW_SAMPLES).size());
+    }
 }
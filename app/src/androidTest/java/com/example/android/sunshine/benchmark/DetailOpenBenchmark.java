@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.DetailActivity;
+import com.example.android.sunshine.app.DetailFragment;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.DayMath;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Times opening a day in detail from the forecast list, and then stepping through the following
+ * days in the same detail view, as the two-pane layout does.  Each frame drawn meanwhile is
+ * timed, and any frame the detail view draws without its day is counted: with the day already
+ * in memory there shouldn't be one, however slow the database.  Results are logged under
+ * DetailOpenBenchmark.
+ *
+ *   adb shell am instrument -w -e class com.example.android.sunshine.benchmark.DetailOpenBenchmark
+ *       com.example.android.sunshine.app.test/android.test.InstrumentationTestRunner
+ *
+ * Replaces weather.db with StartupFixtures' single location, like cold_start.sh -d single.
+ */
+public class DetailOpenBenchmark extends InstrumentationTestCase {
+
+    private static final String LOG_TAG = "DetailOpenBenchmark";
+    private static final long TIMEOUT_MILLIS = 10000;
+    // A frame taking longer than this dropped at least one vsync
+    private static final long JANK_NANOS = 25000000;
+
+    private final List<Activity> mActivities = new ArrayList<>();
+
+    /**
+     * Times every frame from when it's started, and counts those drawn while the detail
+     * activity's date is still empty.  Started, stopped and read on the main thread.
+     */
+    private static final class FrameRecorder implements Choreographer.FrameCallback {
+        final Instrumentation.ActivityMonitor monitor;
+        final List<Long> frameNanos = new ArrayList<>();
+        long startNanos;
+        long firstBoundNanos;
+        int unboundFrames;
+        boolean running;
+        private long mLastFrameNanos;
+
+        FrameRecorder(Instrumentation.ActivityMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        void start() {
+            running = true;
+            startNanos = System.nanoTime();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            running = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!running) return;
+            if (mLastFrameNanos != 0) {
+                frameNanos.add(frameTimeNanos - mLastFrameNanos);
+            }
+            mLastFrameNanos = frameTimeNanos;
+
+            // Frame callbacks run before the frame's layout and draw, so what's bound now is
+            // what this frame shows
+            Activity detail = monitor.getLastActivity();
+            TextView dateView = null == detail ? null
+                    : (TextView) detail.findViewById(R.id.detail_date_textview);
+            if (null != dateView) {
+                if (dateView.getText().length() == 0) {
+                    unboundFrames++;
+                } else if (0 == firstBoundNanos) {
+                    firstBoundNanos = frameTimeNanos;
+                }
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        StartupFixtures.load(getInstrumentation().getTargetContext(), 1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Activity activity : mActivities) {
+            activity.finish();
+        }
+        getInstrumentation().waitForIdleSync();
+        super.tearDown();
+    }
+
+    public void testOpenAndStepThroughDays() throws InterruptedException {
+        final Instrumentation instrumentation = getInstrumentation();
+        Context context = instrumentation.getTargetContext();
+        final String location = StartupFixtures.LOCATION_PREFIX + 0;
+        long today = DayMath.normalize(System.currentTimeMillis());
+
+        // The list's load is what the detail view binds from
+        final MainActivity main = (MainActivity) instrumentation.startActivitySync(
+                new Intent(context, MainActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+        mActivities.add(main);
+        waitForRows(main);
+
+        Instrumentation.ActivityMonitor monitor =
+                instrumentation.addMonitor(DetailActivity.class.getName(), null, false);
+        final FrameRecorder frames = new FrameRecorder(monitor);
+        final Intent detailIntent = new Intent(context, DetailActivity.class).setData(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(location, today));
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                frames.start();
+                main.startActivity(detailIntent);
+            }
+        });
+        final AppCompatActivity detail =
+                (AppCompatActivity) monitor.waitForActivityWithTimeout(TIMEOUT_MILLIS);
+        assertNotNull("Error: the detail activity didn't open", detail);
+        mActivities.add(detail);
+        instrumentation.removeMonitor(monitor);
+        instrumentation.waitForIdleSync();
+
+        // Step on through the days, as selecting each in the two-pane layout would
+        final List<Long> stepNanos = new ArrayList<>();
+        for (int day = 1; day < StartupFixtures.DAYS; day++) {
+            final Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(location,
+                    today + day * DayMath.DAY_IN_MILLIS);
+            final boolean[] boundNow = new boolean[1];
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    DetailFragment fragment = (DetailFragment) detail.getSupportFragmentManager()
+                            .findFragmentById(R.id.weather_detail_container);
+                    TextView dateView = (TextView) detail.findViewById(R.id.detail_date_textview);
+                    String before = dateView.getText().toString();
+                    long start = System.nanoTime();
+                    fragment.showDay(uri);
+                    stepNanos.add(System.nanoTime() - start);
+                    boundNow[0] = !before.equals(dateView.getText().toString());
+                }
+            });
+            assertTrue("Error: day " + day + " wasn't shown straight away", boundNow[0]);
+            instrumentation.waitForIdleSync();
+        }
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                frames.stop();
+            }
+        });
+
+        int janky = 0;
+        for (long nanos : frames.frameNanos) {
+            if (nanos > JANK_NANOS) janky++;
+        }
+        Log.i(LOG_TAG, "Detail open: first bound frame "
+                + (frames.firstBoundNanos - frames.startNanos) / 1000000 + "ms, "
+                + frames.frameNanos.size() + " frames, " + janky + " janky, slowest "
+                + max(frames.frameNanos) / 1000000 + "ms, unbound " + frames.unboundFrames
+                + "; steps: median " + median(stepNanos) / 1000 + "us, slowest "
+                + max(stepNanos) / 1000 + "us");
+        assertEquals("Error: the detail view drew frames without its day", 0,
+                frames.unboundFrames);
+    }
+
+    private void waitForRows(final MainActivity main) throws InterruptedException {
+        final RecyclerView list = (RecyclerView) main.findViewById(R.id.recyclerview_forecast);
+        final int[] rows = new int[1];
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        while (rows[0] == 0 && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(100);
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    rows[0] = list.getChildCount();
+                }
+            });
+        }
+        assertTrue("Error: the forecast list never showed any rows", rows[0] > 0);
+        getInstrumentation().waitForIdleSync();
+    }
+
+    private static long median(List<Long> values) {
+        if (values.isEmpty()) return 0;
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static long max(List<Long> values) {
+        return values.isEmpty() ? 0 : Collections.max(values);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.ViewConfiguration;
+
+import com.example.android.sunshine.app.ListFrameMetrics;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+/**
+ * Flings a long forecast list end to end and back, several times over, and logs what
+ * {@link ListFrameMetrics} saw: frame times, janky frames, and inflate, bind and scroll
+ * listener times.  It's run once with list_item_forecast's rows and once with ForecastRowView's,
+ * and the row passes in each report compare their measure, layout and draw times.  Results are
+ * logged under FlingBenchmark.  Needs a build that collects the
+ * metrics, debug or (better, for timing) benchmark:
+ *
+ *   ./gradlew -PtestBuildType=benchmark installBenchmark installBenchmarkAndroidTest
+ *   adb shell am instrument -w -e class com.example.android.sunshine.benchmark.FlingBenchmark
+ *       com.example.android.sunshine.app.test/android.test.InstrumentationTestRunner
+ *
+ * Replaces weather.db with LIST_DAYS days for a single location.
+ */
+public class FlingBenchmark extends InstrumentationTestCase {
+
+    private static final String LOG_TAG = "FlingBenchmark";
+    private static final int LIST_DAYS = 1000;
+    // Down and back up again counts as two
+    private static final int FLINGS = 20;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Activity mActivity;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        assertTrue("Error: this build doesn't collect list frame metrics; use debug or benchmark",
+                ListFrameMetrics.ENABLED);
+        StartupFixtures.load(getInstrumentation().getTargetContext(), 1, LIST_DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (null != mActivity) {
+            mActivity.finish();
+        }
+        getInstrumentation().waitForIdleSync();
+        super.tearDown();
+    }
+
+    public void testFlingXmlRows() throws InterruptedException {
+        fling(false);
+    }
+
+    public void testFlingFlatRows() throws InterruptedException {
+        fling(true);
+    }
+
+    private void fling(boolean flatRows) throws InterruptedException {
+        Instrumentation instrumentation = getInstrumentation();
+        Context context = instrumentation.getTargetContext();
+        mActivity = instrumentation.startActivitySync(new Intent(context, MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
+                .putExtra(ListFrameMetrics.EXTRA_LIST_DAYS, LIST_DAYS)
+                .putExtra(ListFrameMetrics.EXTRA_FLAT_ROWS, flatRows));
+        final RecyclerView list = (RecyclerView) mActivity.findViewById(R.id.recyclerview_forecast);
+        waitForItems(list, LIST_DAYS);
+
+        final int velocity = ViewConfiguration.get(context).getScaledMaximumFlingVelocity();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ListFrameMetrics.reset();
+            }
+        });
+        for (int i = 0; i < FLINGS; i++) {
+            final int direction = i % 2 == 0 ? 1 : -1;
+            // Fling until the end is reached, then turn round
+            do {
+                instrumentation.runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        list.fling(0, direction * velocity);
+                    }
+                });
+                waitForIdle(list);
+            } while (canScroll(list, direction));
+        }
+
+        final String[] report = new String[1];
+        final int[] frames = new int[1];
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                report[0] = ListFrameMetrics.getReport();
+                frames[0] = ListFrameMetrics.getFrameCount();
+            }
+        });
+        Log.i(LOG_TAG, (flatRows ? "Flat" : "XML") + " rows, " + LIST_DAYS + " days, " + FLINGS
+                + " flings: " + report[0]);
+        assertTrue("Error: no frames were timed while flinging", frames[0] > 0);
+    }
+
+    private boolean canScroll(final RecyclerView list, final int direction) {
+        final boolean[] canScroll = new boolean[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                canScroll[0] = list.canScrollVertically(direction);
+            }
+        });
+        return canScroll[0];
+    }
+
+    private void waitForIdle(final RecyclerView list) throws InterruptedException {
+        final int[] state = new int[1];
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        do {
+            Thread.sleep(50);
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    state[0] = list.getScrollState();
+                }
+            });
+        } while (state[0] != RecyclerView.SCROLL_STATE_IDLE
+                && SystemClock.uptimeMillis() < deadline);
+        assertEquals("Error: the list never stopped", RecyclerView.SCROLL_STATE_IDLE, state[0]);
+    }
+
+    private void waitForItems(final RecyclerView list, int count) throws InterruptedException {
+        final int[] items = new int[1];
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        while (items[0] < count && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(100);
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    items[0] = null == list.getAdapter() ? 0 : list.getAdapter().getItemCount();
+                }
+            });
+        }
+        assertEquals("Error: the list didn't load all its rows", count, items[0]);
+        getInstrumentation().waitForIdleSync();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.data.DayMath;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Puts weather.db into a known state for the cold start benchmark, benchmark/cold_start.sh,
+ * which runs one of these before launching the app.  Each replaces whatever is stored and
+ * points the location setting at the first location it stores.
+ *
+ * Kept outside the app's test package so FullTestSuite doesn't pick them up.
+ */
+public class StartupFixtures extends AndroidTestCase {
+
+    static final String LOCATION_PREFIX = "bench";
+    static final int DAYS = 14;
+    // Enough that the forecast query has a large table to find its 14 rows in
+    static final int MANY_LOCATIONS = 500;
+
+    private static final int[] WEATHER_IDS = {800, 801, 500, 211, 601, 741, 803, 300};
+
+    public void testEmpty() {
+        load(mContext, 0);
+    }
+
+    public void testSingleLocation() {
+        load(mContext, 1);
+    }
+
+    public void testManyLocations() {
+        load(mContext, MANY_LOCATIONS);
+    }
+
+    /**
+     * Replaces what's stored with DAYS days from today for each of that many locations, and
+     * points the location setting at the first.  The other benchmarks load theirs with this too.
+     */
+    static void load(Context context, int locations) {
+        load(context, locations, DAYS);
+    }
+
+    /**
+     * As {@link #load(Context, int)}, with that many days for each location.
+     */
+    static void load(Context context, int locations, int days) {
+        clear(context);
+        insert(context, locations, days);
+        setLocation(context, LOCATION_PREFIX + 0);
+    }
+
+    private static void clear(Context context) {
+        ContentResolver resolver = context.getContentResolver();
+        resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static void setLocation(Context context, String location) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.pref_location_key), location)
+                .commit();
+        SettingsSnapshot.refresh(context);
+    }
+
+    // Days of weather from today for each of that many locations
+    private static void insert(Context context, int locations, int dayCount) {
+        ContentResolver resolver = context.getContentResolver();
+        long today = DayMath.normalize(System.currentTimeMillis());
+        ContentValues[] days = new ContentValues[dayCount];
+        for (int l = 0; l < locations; l++) {
+            ContentValues location = new ContentValues();
+            location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                    LOCATION_PREFIX + l);
+            location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Bench " + l);
+            location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, -60 + l % 120);
+            location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -180 + l % 360);
+            Uri locationUri = resolver.insert(WeatherContract.LocationEntry.CONTENT_URI, location);
+            assertNotNull("Error: couldn't insert location " + l, locationUri);
+            long locationId = ContentUris.parseId(locationUri);
+
+            for (int d = 0; d < dayCount; d++) {
+                ContentValues day = new ContentValues();
+                day.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                day.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        today + d * DayMath.DAY_IN_MILLIS);
+                day.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        WEATHER_IDS[(l + d) % WEATHER_IDS.length]);
+                day.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Bench");
+                day.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20.5 + d % 7);
+                day.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 8.25 + d % 5);
+                day.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 60 + d);
+                day.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1013.25);
+                day.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 3.5 + d % 4);
+                day.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, (45 * d) % 360);
+                days[d] = day;
+            }
+            assertEquals("Error: couldn't insert weather for location " + l, dayCount,
+                    resolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, days));
+        }
+    }
+}
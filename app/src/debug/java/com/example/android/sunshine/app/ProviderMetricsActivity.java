@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.HorizontalScrollView;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Debug build only: shows the WeatherProvider's latency report, slow queries and their plans.
+ */
+public class ProviderMetricsActivity extends AppCompatActivity {
+
+    private static final int MENU_REFRESH = 1;
+    private static final int MENU_RESET = 2;
+
+    private TextView mReportView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mReportView = new TextView(this);
+        mReportView.setTypeface(Typeface.MONOSPACE);
+        mReportView.setTextSize(11);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        mReportView.setPadding(padding, padding, padding, padding);
+        mReportView.setTextIsSelectable(true);
+
+        // The report lines are wide, so scroll both ways rather than wrap them
+        HorizontalScrollView horizontal = new HorizontalScrollView(this);
+        horizontal.addView(mReportView);
+        ScrollView vertical = new ScrollView(this);
+        vertical.addView(horizontal);
+        setContentView(vertical);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(Menu.NONE, MENU_REFRESH, Menu.NONE, "Refresh")
+                .setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+        menu.add(Menu.NONE, MENU_RESET, Menu.NONE, "Reset")
+                .setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case MENU_RESET:
+                getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                        WeatherContract.MetricsEntry.METHOD_RESET_METRICS, null, null);
+                // Fall through to show the now empty report
+            case MENU_REFRESH:
+                refresh();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    private void refresh() {
+        Bundle metrics = getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.MetricsEntry.METHOD_DUMP_METRICS, null, null);
+        mReportView.setText(metrics == null ? "No metrics"
+                : metrics.getString(WeatherContract.MetricsEntry.KEY_REPORT));
+    }
+}
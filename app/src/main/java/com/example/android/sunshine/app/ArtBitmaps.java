@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.util.LruCache;
+
+/**
+ * The bundled art as Bitmaps decoded to the size they're shown at, for the places that need a
+ * Bitmap or would otherwise decode a full size drawable: today's row, the detail pane and
+ * notifications.  Decodes are sampled down by a power of two first, then scaled to fit exactly,
+ * and kept in an LRU bounded by bytes that's shared across the app and emptied when the system
+ * asks for memory back.
+ *
+ * The Bitmaps handed out are shared, so must not be modified or recycled.
+ */
+public final class ArtBitmaps {
+
+    // A sixteenth of the heap; Glide keeps a cache of its own for remote art
+    private static final int CACHE_DIVISOR = 16;
+
+    private static LruCache<String, Bitmap> sCache;
+
+    private ArtBitmaps() {
+    }
+
+    private static synchronized LruCache<String, Bitmap> getCache(Context context) {
+        if (sCache == null) {
+            int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / CACHE_DIVISOR,
+                    Integer.MAX_VALUE);
+            sCache = new LruCache<String, Bitmap>(maxBytes) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+            context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_MODERATE) {
+                        sCache.evictAll();
+                    } else if (level >= TRIM_MEMORY_BACKGROUND) {
+                        sCache.trimToSize(sCache.size() / 2);
+                    }
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    sCache.evictAll();
+                }
+            });
+        }
+        return sCache;
+    }
+
+    /**
+     * A bundled drawable decoded to fit within width x height pixels.  Never scaled up.
+     */
+    public static Bitmap get(Context context, int resId, int width, int height) {
+        LruCache<String, Bitmap> cache = getCache(context);
+        String key = resId + ":" + width + "x" + height;
+        Bitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            // Two threads can both decode the same art here; the second simply replaces the first
+            bitmap = decode(context.getResources(), resId, width, height);
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Art for today's row and the detail pane.
+     */
+    public static Bitmap getArt(Context context, int resId) {
+        int size = ArtCache.getSize(context, ArtCache.SIZE_ART);
+        return get(context, resId, size, size);
+    }
+
+    /**
+     * A notification's large icon.
+     */
+    public static Bitmap getLargeIcon(Context context, int resId) {
+        Resources resources = context.getResources();
+        return get(context, resId, getLargeIconWidth(resources), getLargeIconHeight(resources));
+    }
+
+    public static int getLargeIconWidth(Resources resources) {
+        return resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+    }
+
+    public static int getLargeIconHeight(Resources resources) {
+        return resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+    }
+
+    static Bitmap decode(Resources resources, int resId, int width, int height) {
+        // Density scaling would decode at full size and scale afterwards, so it's done here
+        // instead, as part of the one scale to the size wanted
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                width, height);
+        options.inJustDecodeBounds = false;
+        Bitmap sampled = BitmapFactory.decodeResource(resources, resId, options);
+        if (sampled == null) return null;
+
+        float scale = Math.min((float) width / sampled.getWidth(),
+                (float) height / sampled.getHeight());
+        if (scale >= 1) return sampled;
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled,
+                Math.max(1, Math.round(sampled.getWidth() * scale)),
+                Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * The largest power of two that can divide an image's size and still leave it at least as
+     * big as it's wanted in both dimensions.
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
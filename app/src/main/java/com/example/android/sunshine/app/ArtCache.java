@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Art pack images, loaded at a fixed size for each place they're shown so that a load and the
+ * prefetch before it agree on what's cached.  Glide keys its memory and result caches by size
+ * and transformation; loading an image into a view at whatever size the view happens to measure
+ * would miss anything fetched ahead of time.
+ *
+ * {@link #prefetch(Context)} runs after each sync (and when the art pack changes): it fetches
+ * the art for every day stored for the preferred location and decodes it at each size, so the
+ * list, the detail pane and the detail widget find it in memory, or failing that on disk,
+ * rather than going to the network while the user scrolls.
+ */
+public final class ArtCache {
+
+    private static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    /**
+     * A list row's icon: the forecast list after today, and the detail widget.
+     */
+    public static final int SIZE_ICON = 0;
+    /**
+     * Today's row in the forecast list, and the detail pane.
+     */
+    public static final int SIZE_ART = 1;
+
+    private static final String[] WEATHER_ID_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    private ArtCache() {
+    }
+
+    public static int getSize(Context context, int size) {
+        return context.getResources().getDimensionPixelSize(
+                size == SIZE_ART ? R.dimen.today_icon : R.dimen.list_icon);
+    }
+
+    /**
+     * A request for art to show in an ImageView.
+     */
+    public static DrawableRequestBuilder<String> load(RequestManager glide, Context context,
+                                                      String artUrl, int size) {
+        int px = getSize(context, size);
+        return glide.load(artUrl)
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .override(px, px)
+                .fitCenter();
+    }
+
+    /**
+     * A request for art as a Bitmap, for RemoteViews.
+     */
+    public static BitmapRequestBuilder<String, Bitmap> loadBitmap(Context context, String artUrl,
+                                                                  int size) {
+        int px = getSize(context, size);
+        return Glide.with(context).load(artUrl)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .override(px, px)
+                .fitCenter();
+    }
+
+    /**
+     * Prefetches on a background thread.
+     */
+    public static void prefetchAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                prefetch(appContext);
+            }
+        });
+    }
+
+    /**
+     * Fetches and decodes the art for the days stored for the preferred location, blocking until
+     * it's done.  Does nothing when the local art is in use.  Not to be called on the main thread.
+     */
+    public static void prefetch(Context context) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        if (settings.localGraphics) return;
+
+        long start = SystemClock.elapsedRealtime();
+        Set<String> artUrls = getArtUrls(context, settings.location);
+        int failed = 0;
+        for (String artUrl : artUrls) {
+            try {
+                // The first of these downloads the image; the rest decode it from disk
+                warm(load(Glide.with(context), context, artUrl, SIZE_ICON)
+                        .into(getSize(context, SIZE_ICON), getSize(context, SIZE_ICON)));
+                warm(load(Glide.with(context), context, artUrl, SIZE_ART)
+                        .into(getSize(context, SIZE_ART), getSize(context, SIZE_ART)));
+                warm(loadBitmap(context, artUrl, SIZE_ICON)
+                        .into(getSize(context, SIZE_ICON), getSize(context, SIZE_ICON)));
+            } catch (ExecutionException e) {
+                Log.w(LOG_TAG, "Error prefetching " + artUrl, e);
+                failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        Log.d(LOG_TAG, "Prefetched " + (artUrls.size() - failed) + " of " + artUrls.size()
+                + " art urls in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    // Waits for a load, then releases it, which is what leaves it in the memory cache
+    private static void warm(FutureTarget<?> future)
+            throws ExecutionException, InterruptedException {
+        try {
+            future.get();
+        } finally {
+            Glide.clear(future);
+        }
+    }
+
+    // The distinct art urls for the days stored from today on, in date order
+    private static Set<String> getArtUrls(Context context, String locationSetting) {
+        Set<String> artUrls = new LinkedHashSet<>();
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                WEATHER_ID_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) return artUrls;
+        try {
+            while (cursor.moveToNext()) {
+                String artUrl = Utility.getArtUrlForWeatherCondition(context, cursor.getInt(0));
+                if (artUrl != null) {
+                    artUrls.add(artUrl);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return artUrls;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+
+import java.util.List;
+
+/**
+ * Scroll listener for the forecast list that keeps art loads out of the way of scrolling.
+ * Loads are paused while the list flings and resumed when it settles, and the art for the next
+ * few rows in the direction of travel is loaded ahead of them coming into view.  The adapter
+ * loads through the same RequestManager, so both find what the other loaded.
+ */
+class ArtPreloader extends RecyclerView.OnScrollListener {
+
+    // How many rows past the last visible one to load art for
+    private static final int PRELOAD_AHEAD = 4;
+
+    private final Context mContext;
+    private final RequestManager mGlide;
+    private final ForecastAdapter mAdapter;
+    private final PreloadTargets mTargets = new PreloadTargets(PRELOAD_AHEAD);
+    private boolean mPaused;
+    private int mLastPreloadedFrom = RecyclerView.NO_POSITION;
+    private int mLastPreloadedTo = RecyclerView.NO_POSITION;
+    private int mDirection = 1;
+
+    ArtPreloader(Context context, ForecastAdapter adapter) {
+        mContext = context;
+        mGlide = Glide.with(context);
+        mAdapter = adapter;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+            mGlide.pauseRequests();
+            mPaused = true;
+        } else if (mPaused) {
+            mGlide.resumeRequests();
+            mPaused = false;
+            preload(recyclerView);
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy != 0) {
+            mDirection = dy > 0 ? 1 : -1;
+        }
+        // Anything asked for mid-fling would only queue up behind the pause
+        if (!mPaused) {
+            preload(recyclerView);
+        }
+    }
+
+    private void preload(RecyclerView recyclerView) {
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        List<ForecastItem> items = mAdapter.getItems();
+        if (items == null || items.isEmpty()) return;
+
+        int from;
+        int to;
+        if (mDirection > 0) {
+            from = layoutManager.findLastVisibleItemPosition() + 1;
+            to = Math.min(from + PRELOAD_AHEAD, items.size()) - 1;
+        } else {
+            to = layoutManager.findFirstVisibleItemPosition() - 1;
+            from = Math.max(to - PRELOAD_AHEAD + 1, 0);
+        }
+        if (from > to || (from == mLastPreloadedFrom && to == mLastPreloadedTo)) return;
+        mLastPreloadedFrom = from;
+        mLastPreloadedTo = to;
+
+        for (int position = from; position <= to; position++) {
+            String artUrl = items.get(position).artUrl;
+            if (artUrl == null) continue;
+            ArtCache.load(mGlide, mContext, artUrl, mAdapter.getArtSize(position))
+                    .into(mTargets.next());
+        }
+    }
+}
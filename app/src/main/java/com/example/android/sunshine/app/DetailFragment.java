@@ -39,12 +39,15 @@ import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
- * A placeholder fragment containing a simple view.
+ * Shows one day's forecast.  A day the list has loaded is bound straight from its
+ * {@link ForecastItem} in {@link ForecastModel}; any other day, such as one opened from a widget
+ * or notification, is queried for.  The two-pane layout keeps one of these and calls
+ * {@link #showDay(Uri)} as days are selected.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+        ForecastModel.Listener {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -55,38 +58,13 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The day being shown, or null until it's found
+    private ForecastItem mItem;
+    private MenuItem mShareMenuItem;
+    private boolean mToolbarSetUp;
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
-            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
-            WeatherEntry.COLUMN_DATE,
-            WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherEntry.COLUMN_HUMIDITY,
-            WeatherEntry.COLUMN_PRESSURE,
-            WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherEntry.COLUMN_DEGREES,
-            WeatherEntry.COLUMN_WEATHER_ID,
-            // This works because the WeatherProvider returns location data joined with
-            // weather data, even though they're stored in two different tables.
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
-    };
-
-    // These indices are tied to DETAIL_COLUMNS.  If DETAIL_COLUMNS changes, these
-    // must change.
-    public static final int COL_WEATHER_ID = 0;
-    public static final int COL_WEATHER_DATE = 1;
-    public static final int COL_WEATHER_DESC = 2;
-    public static final int COL_WEATHER_MAX_TEMP = 3;
-    public static final int COL_WEATHER_MIN_TEMP = 4;
-    public static final int COL_WEATHER_HUMIDITY = 5;
-    public static final int COL_WEATHER_PRESSURE = 6;
-    public static final int COL_WEATHER_WIND_SPEED = 7;
-    public static final int COL_WEATHER_DEGREES = 8;
-    public static final int COL_WEATHER_CONDITION_ID = 9;
-
     private ImageView mIconView;
     private TextView mDateView;
     private TextView mDescriptionView;
@@ -112,6 +90,10 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             mUri = arguments.getParcelable(DetailFragment.DETAIL_URI);
             mTransitionAnimation = arguments.getBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, false);
         }
+        if (savedInstanceState != null && savedInstanceState.containsKey(DETAIL_URI)) {
+            // The day selected since, in the two-pane layout
+            mUri = savedInstanceState.getParcelable(DETAIL_URI);
+        }
 
         View rootView = inflater.inflate(R.layout.fragment_detail_start, container, false);
         mIconView = (ImageView) rootView.findViewById(R.id.detail_icon);
@@ -130,8 +112,14 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     private void finishCreatingMenu(Menu menu) {
         // Retrieve the share menu item
-        MenuItem menuItem = menu.findItem(R.id.action_share);
-        menuItem.setIntent(createShareForecastIntent());
+        mShareMenuItem = menu.findItem(R.id.action_share);
+        updateShareMenuItem();
+    }
+
+    // Shares the day shown, and is hidden while there's none
+    private void updateShareMenuItem() {
+        mShareMenuItem.setVisible(mForecast != null);
+        mShareMenuItem.setIntent(mForecast != null ? createShareForecastIntent() : null);
     }
 
     @Override
@@ -153,8 +141,30 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
+        showDay(mUri);
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        ForecastModel.addListener(this);
+        // The list may have loaded again while we were stopped
+        onForecastChanged();
+    }
+
+    @Override
+    public void onStop() {
+        ForecastModel.removeListener(this);
+        super.onStop();
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        if (mUri != null) {
+            outState.putParcelable(DETAIL_URI, mUri);
+        }
+        super.onSaveInstanceState(outState);
     }
 
     void onLocationChanged( String newLocation ) {
@@ -162,108 +172,130 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         Uri uri = mUri;
         if (null != uri) {
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
-            Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
-            mUri = updatedUri;
-            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            showDay(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date));
         }
     }
 
-    @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        if ( null != mUri ) {
-            // Now create and return a CursorLoader that will take care of
-            // creating a Cursor for the data being displayed.
-            return new CursorLoader(
-                    getActivity(),
-                    mUri,
-                    DETAIL_COLUMNS,
-                    null,
-                    null,
-                    null
-            );
+    /**
+     * Shows another day in the views already here.  A day the list has loaded is bound before
+     * this returns.
+     */
+    public void showDay(Uri uri) {
+        mUri = uri;
+        // Not created yet; onActivityCreated shows it
+        if (null == getView()) return;
+        if (null == uri) {
+            hideCard();
+            return;
+        }
+        ForecastItem item = findInModel(uri);
+        if (item != null) {
+            // Don't let a query for the previous day land on top of this one
+            getLoaderManager().destroyLoader(DETAIL_LOADER);
+            bind(item);
+        } else {
+            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
         }
+    }
+
+    private void hideCard() {
         ViewParent vp = getView().getParent();
         if ( vp instanceof CardView ) {
             ((View)vp).setVisibility(View.INVISIBLE);
         }
-        return null;
+    }
+
+    private static ForecastItem findInModel(Uri uri) {
+        return ForecastModel.find(WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                WeatherContract.WeatherEntry.getDateFromUri(uri));
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
+    public void onForecastChanged() {
+        if (null == mUri || null == getView()) return;
+        ForecastItem item = findInModel(mUri);
+        // Items are rebuilt on every load, so a different one may show different weather
+        if (item != null && item != mItem) {
+            getLoaderManager().destroyLoader(DETAIL_LOADER);
+            bind(item);
+        }
+        // The units, art or date may have changed before the list got round to formatting its
+        // items again, or the day may be one our own query found.  Either way, only the
+        // formatting is out of date.
+        if (mItem != null && !mItem.isFormattedFor(SettingsSnapshot.get(getActivity()))) {
+            bind(new ForecastItem(getActivity(), mItem));
+        }
+    }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
-            }
+    private void bind(ForecastItem item) {
+        mItem = item;
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
+
+        if ( null == item.artUrl ) {
+            mIconView.setImageBitmap(ArtBitmaps.getArt(getActivity(), item.artResource));
+        } else {
+            // Use weather art image
+            ArtCache.load(Glide.with(this), getActivity(), item.artUrl, ArtCache.SIZE_ART)
+                    .error(item.artResource)
+                    .crossFade()
+                    .into(mIconView);
+        }
+
+        mDateView.setText(item.fullDayText);
+
+        mDescriptionView.setText(item.description);
+        mDescriptionView.setContentDescription(item.descriptionContentDescription);
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(item.iconContentDescription);
+
+        mHighTempView.setText(item.highText);
+        mHighTempView.setContentDescription(item.highContentDescription);
+
+        mLowTempView.setText(item.lowText);
+        mLowTempView.setContentDescription(item.lowContentDescription);
+
+        mHumidityView.setText(item.humidityText);
+        mHumidityView.setContentDescription(item.humidityContentDescription);
+        mHumidityLabelView.setContentDescription(item.humidityContentDescription);
+
+        mWindView.setText(item.windText);
+        mWindView.setContentDescription(item.windContentDescription);
+        mWindLabelView.setContentDescription(item.windContentDescription);
+
+        mPressureView.setText(item.pressureText);
+        mPressureView.setContentDescription(item.pressureContentDescription);
+        mPressureLabelView.setContentDescription(item.pressureContentDescription);
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", item.fullDayText, item.description,
+                item.high, item.low);
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        onDayShown();
+    }
 
+    // Shows no day at all: the card is hidden, and without one the views are emptied
+    private void clear() {
+        mItem = null;
+        mForecast = null;
+        hideCard();
+        Glide.clear(mIconView);
+        mIconView.setImageDrawable(null);
+        mIconView.setContentDescription(null);
+        for (TextView view : new TextView[]{mDateView, mDescriptionView, mHighTempView,
+                mLowTempView, mHumidityView, mWindView, mPressureView}) {
+            view.setText(null);
+            view.setContentDescription(null);
         }
+    }
+
+    private void onDayShown() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
@@ -271,22 +303,55 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         if ( mTransitionAnimation ) {
             activity.supportStartPostponedEnterTransition();
 
-            if ( null != toolbarView ) {
+            if ( null != toolbarView && !mToolbarSetUp ) {
                 activity.setSupportActionBar(toolbarView);
 
                 activity.getSupportActionBar().setDisplayShowTitleEnabled(false);
                 activity.getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+                mToolbarSetUp = true;
             }
         } else {
-            if ( null != toolbarView ) {
+            if ( null != toolbarView && !mToolbarSetUp ) {
                 Menu menu = toolbarView.getMenu();
                 if ( null != menu ) menu.clear();
                 toolbarView.inflateMenu(R.menu.detailfragment);
                 finishCreatingMenu(toolbarView.getMenu());
+                mToolbarSetUp = true;
             }
         }
+        // Later days only need the menu's share text brought up to date
+        if ( null != mShareMenuItem ) {
+            updateShareMenuItem();
+        }
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        // Now create and return a CursorLoader that will take care of
+        // creating a Cursor for the data being displayed.  It fetches the list's columns, so
+        // the row makes the same ForecastItem the list would have.
+        return new CursorLoader(
+                getActivity(),
+                mUri,
+                ForecastFragment.FORECAST_COLUMNS,
+                null,
+                null,
+                null
+        );
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (data != null && data.moveToFirst()) {
+            bind(new ForecastItem(getActivity(), data,
+                    Utility.usingLocalGraphics(getActivity())));
+        } else {
+            // There's no such day, so don't leave the last one showing under its uri
+            clear();
+            onDayShown();
+        }
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) { }
-}
\ No newline at end of file
+}
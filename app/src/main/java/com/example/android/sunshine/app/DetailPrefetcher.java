@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scroll listener for the forecast list that decodes the detail view's art for the days it's
+ * likely to open next, so opening one binds everything from memory: the day's text is already
+ * in its {@link ForecastItem} (see {@link ForecastModel}), and this warms the art.  Those days
+ * are the rows in view whenever the list comes to rest, and the days either side of one that's
+ * selected.  Nothing is fetched while the list is moving.
+ */
+class DetailPrefetcher extends RecyclerView.OnScrollListener {
+
+    // Days either side of the selected one
+    private static final int NEIGHBORS = 1;
+    // Most rows warmed at once; about a phone screen's worth
+    private static final int MAX_DAYS = 8;
+
+    private final Context mContext;
+    private final RequestManager mGlide;
+    private final ForecastAdapter mAdapter;
+    // The rows in view and the selected day's neighbors each load into their own targets, so
+    // a selection can't cancel the loads for what's on screen, nor the other way round
+    private final PreloadTargets mVisibleTargets = new PreloadTargets(MAX_DAYS);
+    private final PreloadTargets mNeighborTargets = new PreloadTargets(2 * NEIGHBORS + 1);
+    private int mLastFrom = RecyclerView.NO_POSITION;
+    private int mLastTo = RecyclerView.NO_POSITION;
+
+    DetailPrefetcher(Context context, ForecastAdapter adapter) {
+        mContext = context.getApplicationContext();
+        mGlide = Glide.with(context);
+        mAdapter = adapter;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            onListIdle(recyclerView);
+        }
+    }
+
+    /**
+     * Warms the rows in view.  Also called once a load's rows are first laid out.
+     */
+    void onListIdle(RecyclerView recyclerView) {
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int from = layoutManager.findFirstVisibleItemPosition();
+        int to = layoutManager.findLastVisibleItemPosition();
+        if (from == RecyclerView.NO_POSITION) return;
+        to = Math.min(to, from + MAX_DAYS - 1);
+        // The same rows as last time are already warm, unless the items have since changed
+        if (from == mLastFrom && to == mLastTo) return;
+        mLastFrom = from;
+        mLastTo = to;
+        prefetch(from, to, mVisibleTargets);
+    }
+
+    /**
+     * Warms the days either side of the one just selected, which are the ones to go to next.
+     */
+    void onDaySelected(int position) {
+        if (position == RecyclerView.NO_POSITION) return;
+        prefetch(position - NEIGHBORS, position + NEIGHBORS, mNeighborTargets);
+    }
+
+    /**
+     * Forgets which rows were warmed, once the list has new items.
+     */
+    void onItemsChanged() {
+        mLastFrom = RecyclerView.NO_POSITION;
+        mLastTo = RecyclerView.NO_POSITION;
+    }
+
+    private void prefetch(int from, int to, PreloadTargets targets) {
+        List<ForecastItem> items = mAdapter.getItems();
+        if (items == null || items.isEmpty()) return;
+        from = Math.max(from, 0);
+        to = Math.min(to, items.size() - 1);
+
+        final List<Integer> localArt = new ArrayList<>();
+        for (int position = from; position <= to; position++) {
+            ForecastItem item = items.get(position);
+            if (item.artUrl != null) {
+                ArtCache.load(mGlide, mContext, item.artUrl, ArtCache.SIZE_ART)
+                        .into(targets.next());
+            } else if (!localArt.contains(item.artResource)) {
+                localArt.add(item.artResource);
+            }
+        }
+        if (localArt.isEmpty()) return;
+        // ArtBitmaps keeps what it decodes, and a hit there is cheap enough to just ask again
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int resId : localArt) {
+                    ArtBitmaps.getArt(mContext, resId);
+                }
+            }
+        });
+    }
+}
@@ -16,9 +16,9 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
+import android.support.v4.content.ContextCompat;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -30,38 +30,54 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * loaded by {@link ForecastLoader} to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    private static final String LOG_TAG = ForecastAdapter.class.getSimpleName();
+
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
+    // A future day drawn by a ForecastRowView rather than inflated from list_item_forecast
+    static final int VIEW_TYPE_FUTURE_DAY_FLAT = 2;
+    // What ListFrameMetrics reports each view type as, indexed by view type
+    private static final String[] VIEW_TYPE_NAMES = {"today", "future day", "flat future day"};
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
+    // Whether future days are ForecastRowViews
+    private boolean mUseFlatRows;
 
-    private Cursor mCursor;
+    private List<ForecastItem> mItems;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    // Where rows come from, if they're shared with other lists
+    private ForecastViewPool mViewPool;
 
     /**
-     * Cache of the children views for a forecast list item.
+     * Cache of the children views for a forecast list item.  Holders can be shared between
+     * lists (see {@link ForecastViewPool}), so a holder only knows its adapter while bound.
+     * A flat row has its {@link ForecastRowView} and none of the other views.
      */
-    public class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    public static class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         public final ImageView mIconView;
         public final TextView mDateView;
         public final TextView mDescriptionView;
         public final TextView mHighTempView;
         public final TextView mLowTempView;
+        public final ForecastRowView mRowView;
+        private ForecastAdapter mAdapter;
 
         public ForecastAdapterViewHolder(View view) {
             super(view);
+            mRowView = view instanceof ForecastRowView ? (ForecastRowView) view : null;
             mIconView = (ImageView) view.findViewById(R.id.list_item_icon);
             mDateView = (TextView) view.findViewById(R.id.list_item_date_textview);
             mDescriptionView = (TextView) view.findViewById(R.id.list_item_forecast_textview);
@@ -72,11 +88,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         @Override
         public void onClick(View v) {
+            if ( null == mAdapter ) return;
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
-            mICM.onClick(this);
+            // A row animating out after its day was removed is still on screen, but has no day
+            if ( adapterPosition == RecyclerView.NO_POSITION ) return;
+            mAdapter.mClickHandler.onClick(mAdapter.mItems.get(adapterPosition).date, this);
+            mAdapter.mICM.onClick(this);
         }
     }
 
@@ -85,6 +102,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
+        // Rows are keyed by their date, so updates can be dispatched a row at a time and the
+        // ItemChoiceManager can follow the selected day as rows come and go.  Set first, as
+        // RecyclerView won't have stable ids changed once an observer is registered.
+        setHasStableIds(true);
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
@@ -92,6 +113,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mICM.setChoiceMode(choiceMode);
     }
 
+    /**
+     * Has rows inflated for the pool rather than for this list alone.
+     */
+    void setViewPool(ForecastViewPool viewPool) {
+        mViewPool = viewPool;
+    }
+
+    /**
+     * Has future days drawn by {@link ForecastRowView}s.  Set before the list's first layout.
+     */
+    void setUseFlatRows(boolean useFlatRows) {
+        mUseFlatRows = useFlatRows;
+    }
+
     /*
         This takes advantage of the fact that the viewGroup passed to onCreateViewHolder is the
         RecyclerView that will be used to contain the view, so that it can get the current
@@ -99,10 +134,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         One could implement this pattern without modifying RecyclerView by taking advantage
         of the view tag to store the ItemChoiceManager.
+
+        The pool also calls this on a background thread to make rows ahead of time, so it mustn't
+        touch anything but its arguments.
      */
     @Override
     public ForecastAdapterViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
         if ( viewGroup instanceof RecyclerView ) {
+            long start = ListFrameMetrics.start();
             int layoutId = -1;
             switch (viewType) {
                 case VIEW_TYPE_TODAY: {
@@ -114,9 +153,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
                     break;
                 }
             }
-            View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
+            LayoutInflater inflater = null == mViewPool
+                    ? LayoutInflater.from(viewGroup.getContext()) : mViewPool.getInflater();
+            View view;
+            if ( viewType == VIEW_TYPE_FUTURE_DAY_FLAT ) {
+                view = new ForecastRowView(inflater.getContext());
+                view.setLayoutParams(new RecyclerView.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            } else {
+                view = inflater.inflate(layoutId, viewGroup, false);
+            }
             view.setFocusable(true);
-            return new ForecastAdapterViewHolder(view);
+            ForecastAdapterViewHolder holder = new ForecastAdapterViewHolder(view);
+            ListFrameMetrics.onInflated(VIEW_TYPE_NAMES[viewType], start);
+            return holder;
         } else {
             throw new RuntimeException("Not bound to RecyclerView");
         }
@@ -124,26 +174,40 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Everything shown was formatted by the loader, so this only hands it to the views
+        long start = ListFrameMetrics.start();
+        ForecastItem item = mItems.get(position);
         int defaultImage;
-        boolean useLongToday;
+        String dayText;
+        int viewType = getItemViewType(position);
+        forecastAdapterViewHolder.mAdapter = this;
+
+        if ( viewType == VIEW_TYPE_FUTURE_DAY_FLAT ) {
+            bindFlatRow(forecastAdapterViewHolder, item, position);
+            onBound(viewType, start);
+            return;
+        }
 
-        switch (getItemViewType(position)) {
+        switch (viewType) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = item.artResource;
+                dayText = item.longDayText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = item.iconResource;
+                dayText = item.dayText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        if ( null == item.artUrl ) {
+            if ( getArtSize(position) == ArtCache.SIZE_ART ) {
+                forecastAdapterViewHolder.mIconView.setImageBitmap(
+                        ArtBitmaps.getArt(mContext, defaultImage));
+            } else {
+                // The icons are drawn at the size they're shown
+                forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+            }
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            ArtCache.load(Glide.with(mContext), mContext, item.artUrl, getArtSize(position))
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,38 +215,58 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        // (named by date rather than position, since rows now shift without being rebound)
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + item.date);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(dayText);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(item.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(
+                item.descriptionContentDescription);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(item.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(item.highContentDescription);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(item.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(item.lowContentDescription);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        onBound(viewType, start);
+    }
+
+    private void onBound(int viewType, long start) {
+        ListFrameMetrics.onBound(VIEW_TYPE_NAMES[viewType], start);
+
+        if ( !StartupReport.hasFirstRowBound() ) {
+            StartupReport.onFirstRowBound();
+        }
+    }
+
+    // The same as the other rows, but into one view, which reads the day out as a whole
+    private void bindFlatRow(ForecastAdapterViewHolder holder, ForecastItem item, int position) {
+        ForecastRowView rowView = holder.mRowView;
+        if ( null == item.artUrl ) {
+            Glide.clear(rowView.getIconTarget());
+            // Conditions without an icon of their own (-1) are shown without one
+            rowView.setIcon(item.iconResource == -1
+                    ? null : ContextCompat.getDrawable(mContext, item.iconResource));
+        } else {
+            ArtCache.load(Glide.with(mContext), mContext, item.artUrl, ArtCache.SIZE_ICON)
+                    .error(item.iconResource)
+                    .into(rowView.getIconTarget());
+        }
+        rowView.bind(item.dayText, item);
+        mICM.onBindViewHolder(holder, position);
+    }
+
+    @Override
+    public void onViewRecycled(ForecastAdapterViewHolder holder) {
+        // It may be shown by another list next
+        holder.mAdapter = null;
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -203,23 +287,64 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemViewType(int position) {
-        return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
+        return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : getFutureDayViewType();
+    }
+
+    int getFutureDayViewType() {
+        return mUseFlatRows ? VIEW_TYPE_FUTURE_DAY_FLAT : VIEW_TYPE_FUTURE_DAY;
+    }
+
+    /**
+     * The {@link ArtCache} size a row's art is loaded at.
+     */
+    public int getArtSize(int position) {
+        return getItemViewType(position) == VIEW_TYPE_TODAY ? ArtCache.SIZE_ART : ArtCache.SIZE_ICON;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if ( null == mItems || position < 0 || position >= mItems.size() ) {
+            return RecyclerView.NO_ID;
+        }
+        return mItems.get(position).date;
     }
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mItems ) return 0;
+        return mItems.size();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    /**
+     * Shows the loader's latest items.  When the diff was worked out against what's showing
+     * now, only the rows that changed are notified; otherwise everything is.
+     */
+    public void swapItems(ForecastDiff diff) {
+        List<ForecastItem> oldItems = mItems;
+        if ( null == diff ) {
+            mItems = null;
+            notifyDataSetChanged();
+        } else if ( diff.from != oldItems ) {
+            mItems = diff.to;
+            notifyDataSetChanged();
+        } else {
+            mItems = diff.to;
+            diff.dispatchTo(this);
+            // The first row uses its own layout, so whichever row has just become first needs
+            // binding again to pick it up
+            if ( mUseTodayLayout && !mItems.isEmpty()
+                    && (oldItems.isEmpty() || oldItems.get(0).date != mItems.get(0).date) ) {
+                notifyItemChanged(0);
+            }
+            Log.d(LOG_TAG, "Forecast updated: " + diff.getInsertedCount() + " inserted, "
+                    + diff.getRemovedCount() + " removed, " + diff.getChangedCount()
+                    + " changed, " + diff.getRebindsSaved() + " rebinds saved");
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    public List<ForecastItem> getItems() {
+        return mItems;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes that turn one forecast list into another, as RecyclerView notifications.  Both
+ * lists are sorted by date with one row per day, so days are matched up in a single merge pass:
+ * a day only in the old list is removed, a day only in the new list is inserted, and a day in
+ * both is changed only if something it shows is different.
+ */
+public final class ForecastDiff {
+    static final int REMOVE = 0;
+    static final int INSERT = 1;
+    static final int CHANGE = 2;
+
+    /** The list this diff applies to; anything else needs a full refresh instead. */
+    final List<ForecastItem> from;
+    final List<ForecastItem> to;
+
+    // Runs of {type, position, count}, in the order they must be dispatched
+    private final List<int[]> mOps = new ArrayList<>();
+    private int mInserted;
+    private int mRemoved;
+    private int mChanged;
+
+    private ForecastDiff(List<ForecastItem> from, List<ForecastItem> to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    static ForecastDiff compute(List<ForecastItem> from, List<ForecastItem> to) {
+        ForecastDiff diff = new ForecastDiff(from, to);
+        // Position in the list as it stands after the ops so far
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        while (i < from.size() || j < to.size()) {
+            if (j == to.size() || (i < from.size() && from.get(i).date < to.get(j).date)) {
+                diff.add(REMOVE, position);
+                i++;
+            } else if (i == from.size() || from.get(i).date > to.get(j).date) {
+                diff.add(INSERT, position++);
+                j++;
+            } else {
+                if (!from.get(i).sameContentAs(to.get(j))) {
+                    diff.add(CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    private void add(int type, int position) {
+        switch (type) {
+            case REMOVE: mRemoved++; break;
+            case INSERT: mInserted++; break;
+            default: mChanged++;
+        }
+        if (!mOps.isEmpty()) {
+            int[] last = mOps.get(mOps.size() - 1);
+            // Removals stay put as they eat the list; inserts and changes walk forward
+            int next = type == REMOVE ? last[1] : last[1] + last[2];
+            if (last[0] == type && position == next) {
+                last[2]++;
+                return;
+            }
+        }
+        mOps.add(new int[] {type, position, 1});
+    }
+
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int[] op : mOps) {
+            switch (op[0]) {
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(op[1], op[2]);
+                    break;
+                case INSERT:
+                    adapter.notifyItemRangeInserted(op[1], op[2]);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(op[1], op[2]);
+            }
+        }
+    }
+
+    int getInsertedCount() {
+        return mInserted;
+    }
+
+    int getRemovedCount() {
+        return mRemoved;
+    }
+
+    int getChangedCount() {
+        return mChanged;
+    }
+
+    /**
+     * Rows that would have been bound again by notifyDataSetChanged but weren't: every row
+     * of the new list except the ones inserted or changed.
+     */
+    int getRebindsSaved() {
+        return to.size() - mInserted - mChanged;
+    }
+
+    // For tests: the runs as "-0x2 +3x1 ~5x1", removals, insertions and changes
+    String describeOps() {
+        StringBuilder sb = new StringBuilder();
+        for (int[] op : mOps) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(op[0] == REMOVE ? '-' : op[0] == INSERT ? '+' : '~')
+                    .append(op[1]).append('x').append(op[2]);
+        }
+        return sb.toString();
+    }
+}
@@ -20,15 +20,12 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -48,13 +45,17 @@ import android.widget.TextView;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.List;
+
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<ForecastDiff>, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
+    private DetailPrefetcher mDetailPrefetcher;
+    private ForecastViewPool mViewPool;
     private boolean mUseTodayLayout, mAutoSelectView;
     private int mChoiceMode;
     private boolean mHoldForTransition;
@@ -64,8 +65,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
-    // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    // Specify the columns we need.  The detail view's few extra columns come along too, so a
+    // selected day can be shown straight from the list's items (see ForecastModel).
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -80,7 +82,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
     };
 
     // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
@@ -94,6 +100,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_CONDITION_ID = 6;
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
+    static final int COL_WEATHER_HUMIDITY = 9;
+    static final int COL_WEATHER_PRESSURE = 10;
+    static final int COL_WEATHER_WIND_SPEED = 11;
+    static final int COL_WEATHER_DEGREES = 12;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -119,15 +129,17 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onResume() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        sp.registerOnSharedPreferenceChangeListener(this);
+        // Through the settings snapshot, so the location status we read back is the new one
+        SettingsSnapshot.registerListener(getActivity(), this);
         super.onResume();
     }
 
     @Override
     public void onPause() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        sp.unregisterOnSharedPreferenceChangeListener(this);
+        SettingsSnapshot.unregisterListener(this);
+        if (ListFrameMetrics.ENABLED) {
+            Log.d(LOG_TAG, ListFrameMetrics.getReport());
+        }
         super.onPause();
     }
 
@@ -188,6 +200,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         mForecastAdapter = new ForecastAdapter(getActivity(), new ForecastAdapter.ForecastAdapterOnClickHandler() {
             @Override
             public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+                mDetailPrefetcher.onDaySelected(vh.getAdapterPosition());
                 String locationSetting = Utility.getPreferredLocation(getActivity());
                 ((Callback) getActivity())
                         .onItemSelected(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
@@ -196,14 +209,34 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         );
             }
         }, emptyView, mChoiceMode);
+        boolean flatRows = getResources().getBoolean(R.bool.flat_forecast_rows);
+        if (ListFrameMetrics.ENABLED) {
+            // The scroll benchmark times both kinds of row
+            flatRows = getActivity().getIntent().getBooleanExtra(ListFrameMetrics.EXTRA_FLAT_ROWS,
+                    flatRows);
+        }
+        mForecastAdapter.setUseFlatRows(flatRows);
 
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
+        // Rows come from a pool shared with the lists before and after this one, which is
+        // filled ahead of the first layout; see onActivityCreated
+        mViewPool = ForecastViewPool.get(getActivity());
+        mForecastAdapter.setViewPool(mViewPool);
+        mViewPool.attach(mRecyclerView);
+        // keeps art loads from competing with flings, and loads art ahead of the scroll
+        mRecyclerView.addOnScrollListener(new ArtPreloader(getActivity(), mForecastAdapter));
+        // and decodes the detail view's art for the rows in view whenever the list comes to rest
+        mDetailPrefetcher = new DetailPrefetcher(getActivity(), mForecastAdapter);
+        mRecyclerView.addOnScrollListener(mDetailPrefetcher);
+        // In debug and benchmark builds, times the frames while the list scrolls
+        ListFrameMetrics.attach(mRecyclerView);
 
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                mRecyclerView.addOnScrollListener(ListFrameMetrics.timed("parallax",
+                        new RecyclerView.OnScrollListener() {
                     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
                     @Override
                     public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
@@ -215,7 +248,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                             parallaxView.setTranslationY(Math.min(0, parallaxView.getTranslationY() - dy / 2));
                         }
                     }
-                });
+                }));
             }
         }
 
@@ -223,7 +256,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if (null != appbarView) {
             ViewCompat.setElevation(appbarView, 0);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                mRecyclerView.addOnScrollListener(ListFrameMetrics.timed("elevation",
+                        new RecyclerView.OnScrollListener() {
                     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
                     @Override
                     public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
@@ -233,7 +267,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                             appbarView.setElevation(appbarView.getTargetElevation());
                         }
                     }
-                });
+                }));
             }
         }
 
@@ -259,6 +293,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        // By now the activity has said whether there's a today row, and the rows can be
+        // inflated while the forecast loads
+        mViewPool.prewarm(mRecyclerView, mForecastAdapter, mUseTodayLayout);
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
@@ -273,11 +310,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+            List<ForecastItem> items = mForecastAdapter.getItems();
+            if (null != items && !items.isEmpty()) {
+                String posLat = items.get(0).coordLat;
+                String posLong = items.get(0).coordLong;
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -302,7 +338,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<ForecastDiff> onCreateLoader(int i, Bundle bundle) {
         // This is called when a new Loader needs to be created.  This
         // fragment only uses one loader, so we don't care about checking the id.
 
@@ -313,22 +349,30 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
+        int days = SunshineSyncAdapter.FORECAST_DAYS;
+        if (ListFrameMetrics.ENABLED) {
+            // The scroll benchmark asks for a much longer list than a forecast makes
+            days = getActivity().getIntent().getIntExtra(ListFrameMetrics.EXTRA_LIST_DAYS, days);
+        }
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.withLimit(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                days);
 
-        return new CursorLoader(getActivity(),
+        // The rows are formatted into ForecastItems on the loader's thread, not while binding
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
-                null,
-                null,
                 sortOrder);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+    public void onLoadFinished(Loader<ForecastDiff> loader, ForecastDiff data) {
+        StartupReport.onFirstLoadFinished(data.to.isEmpty());
+        mForecastAdapter.swapItems(data);
+        mDetailPrefetcher.onItemsChanged();
         updateEmptyView();
-        if ( data.getCount() == 0 ) {
+        if ( data.to.isEmpty() ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
             mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -341,12 +385,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+                            List<ForecastItem> data = mForecastAdapter.getItems();
+                            int count = data.size();
                             for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
+                                if ( data.get(i).date == mInitialSelectedDate ) {
                                     position = i;
                                     break;
                                 }
@@ -363,6 +405,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         if ( mHoldForTransition ) {
                             getActivity().supportStartPostponedEnterTransition();
                         }
+                        mDetailPrefetcher.onListIdle(mRecyclerView);
                         return true;
                     }
                     return false;
@@ -374,6 +417,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
 
+    @Override
+    public void onDestroyView() {
+        // Give the rows back for the next list
+        mViewPool.detach(mRecyclerView);
+        super.onDestroyView();
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -383,8 +433,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+    public void onLoaderReset(Loader<ForecastDiff> loader) {
+        mForecastAdapter.swapItems(null);
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
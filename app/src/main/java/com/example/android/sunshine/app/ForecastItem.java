@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.DayMath;
+
+/**
+ * One row of the forecast list, with everything the row shows already formatted.  Items are
+ * built by {@link ForecastLoader} off the main thread, so binding one is just assigning fields.
+ * They also carry what only the detail view shows, formatted the same way, so showing a day in
+ * detail is just assigning fields too.
+ *
+ * Items keep the raw values they were formatted from, so a change of units or art pack, or of
+ * the date (which "Today" and "Tomorrow" are relative to), only needs them formatted again (see
+ * {@link #ForecastItem(Context, ForecastItem)}), not the forecast read back from the database.
+ */
+public final class ForecastItem {
+    public final long id;
+    public final long date;
+    public final int weatherId;
+
+    // The date as a future day shows it, and as the "today" layout shows it
+    public final String dayText;
+    public final String longDayText;
+
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String highText;
+    public final String highContentDescription;
+    public final String lowText;
+    public final String lowContentDescription;
+
+    public final int iconResource;
+    public final int artResource;
+    // Where to fetch the art from, or null when using the local graphics
+    public final String artUrl;
+
+    public final String coordLat;
+    public final String coordLong;
+
+    // Only shown in the detail view
+    public final double high;
+    public final double low;
+    public final float humidity;
+    public final float pressure;
+    public final float windSpeed;
+    public final float windDirection;
+    public final String fullDayText;
+    public final String iconContentDescription;
+    public final String humidityText;
+    public final String humidityContentDescription;
+    public final String windText;
+    public final String windContentDescription;
+    public final String pressureText;
+    public final String pressureContentDescription;
+
+    // The settings the text and art were formatted for; the art pack is null for local graphics
+    private final boolean mMetric;
+    private final String mArtPackUrl;
+    // The epoch day the day names were formatted on
+    private final long mToday;
+
+    /**
+     * Builds the item for the cursor's current row, which must have {@link ForecastFragment}'s
+     * forecast columns.  This reads preferences and resources, so keep it off the main thread
+     * where possible.
+     */
+    ForecastItem(Context context, Cursor cursor, boolean localGraphics) {
+        // Read before formatting, so a change meanwhile leaves the item looking out of date
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        mMetric = settings.metric;
+        mArtPackUrl = localGraphics ? null : settings.artPackUrl;
+        final long now = System.currentTimeMillis();
+        mToday = DayMath.toEpochDay(now);
+
+        id = cursor.getLong(ForecastFragment.COL_WEATHER_ID);
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        dayText = Utility.getFriendlyDayString(context, date, false);
+        longDayText = getLongDayText(context, now, date, dayText);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+        high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        highText = Utility.formatTemperature(context, high);
+        highContentDescription = context.getString(R.string.a11y_high_temp, highText);
+        low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        lowText = Utility.formatTemperature(context, low);
+        lowContentDescription = context.getString(R.string.a11y_low_temp, lowText);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        coordLat = cursor.getString(ForecastFragment.COL_COORD_LAT);
+        coordLong = cursor.getString(ForecastFragment.COL_COORD_LONG);
+
+        humidity = cursor.getFloat(ForecastFragment.COL_WEATHER_HUMIDITY);
+        pressure = cursor.getFloat(ForecastFragment.COL_WEATHER_PRESSURE);
+        windSpeed = cursor.getFloat(ForecastFragment.COL_WEATHER_WIND_SPEED);
+        windDirection = cursor.getFloat(ForecastFragment.COL_WEATHER_DEGREES);
+
+        fullDayText = Utility.getFullFriendlyDayString(context, date);
+        iconContentDescription = context.getString(R.string.a11y_forecast_icon, description);
+        humidityText = context.getString(R.string.format_humidity, humidity);
+        humidityContentDescription = context.getString(R.string.a11y_humidity, humidityText);
+        windText = Utility.getFormattedWind(context, windSpeed, windDirection);
+        windContentDescription = context.getString(R.string.a11y_wind, windText);
+        pressureText = context.getString(R.string.format_pressure, pressure);
+        pressureContentDescription = context.getString(R.string.a11y_pressure, pressureText);
+    }
+
+    /**
+     * The same day formatted again for the current settings and date, without going back to
+     * the database.  Only the temperatures, wind and art depend on settings, and only the day
+     * names on the date; everything else is shared with the original.
+     */
+    ForecastItem(Context context, ForecastItem from) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        mMetric = settings.metric;
+        mArtPackUrl = settings.localGraphics ? null : settings.artPackUrl;
+        final long now = System.currentTimeMillis();
+        mToday = DayMath.toEpochDay(now);
+
+        id = from.id;
+        date = from.date;
+        weatherId = from.weatherId;
+        if (mToday == from.mToday) {
+            dayText = from.dayText;
+            longDayText = from.longDayText;
+            fullDayText = from.fullDayText;
+        } else {
+            dayText = Utility.getFriendlyDayString(context, date, false);
+            longDayText = getLongDayText(context, now, date, dayText);
+            fullDayText = Utility.getFullFriendlyDayString(context, date);
+        }
+        description = from.description;
+        descriptionContentDescription = from.descriptionContentDescription;
+
+        high = from.high;
+        highText = Utility.formatTemperature(context, high);
+        highContentDescription = context.getString(R.string.a11y_high_temp, highText);
+        low = from.low;
+        lowText = Utility.formatTemperature(context, low);
+        lowContentDescription = context.getString(R.string.a11y_low_temp, lowText);
+
+        iconResource = from.iconResource;
+        artResource = from.artResource;
+        artUrl = settings.localGraphics ? null
+                : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        coordLat = from.coordLat;
+        coordLong = from.coordLong;
+
+        humidity = from.humidity;
+        pressure = from.pressure;
+        windSpeed = from.windSpeed;
+        windDirection = from.windDirection;
+        iconContentDescription = from.iconContentDescription;
+        humidityText = from.humidityText;
+        humidityContentDescription = from.humidityContentDescription;
+        windText = Utility.getFormattedWind(context, windSpeed, windDirection);
+        windContentDescription = context.getString(R.string.a11y_wind, windText);
+        pressureText = from.pressureText;
+        pressureContentDescription = from.pressureContentDescription;
+    }
+
+    // Only today reads differently in the long form
+    private static String getLongDayText(Context context, long now, long date, String dayText) {
+        return DayMath.daysBetween(now, date) == 0
+                ? Utility.getFriendlyDayString(context, date, true) : dayText;
+    }
+
+    /**
+     * Whether the item's text and art are what the given settings would show today.
+     */
+    boolean isFormattedFor(SettingsSnapshot settings) {
+        return mMetric == settings.metric && TextUtils.equals(mArtPackUrl,
+                settings.localGraphics ? null : settings.artPackUrl)
+                && mToday == DayMath.toEpochDay(System.currentTimeMillis());
+    }
+
+    /**
+     * Whether a row showing this item would look the same showing the other one.
+     */
+    boolean sameContentAs(ForecastItem other) {
+        return date == other.date
+                && iconResource == other.iconResource
+                && artResource == other.artResource
+                && TextUtils.equals(artUrl, other.artUrl)
+                && dayText.equals(other.dayText)
+                && longDayText.equals(other.longDayText)
+                && TextUtils.equals(description, other.description)
+                && highText.equals(other.highText)
+                && lowText.equals(other.lowText);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the forecast like a CursorLoader would, but turns the rows into {@link ForecastItem}s
+ * on the loader's thread and closes the cursor, so the list never touches a cursor or formats
+ * anything while scrolling.  Reloads whenever the weather under the uri changes.  A change of
+ * units or art pack reloads too, but only formats the items already loaded again: the weather
+ * itself hasn't changed, so there's no need to query for it.  So does a change of date, which
+ * moves "Today" and "Tomorrow" along.
+ *
+ * Each result is a {@link ForecastDiff} from the previous result to the new items, also worked
+ * out on the loader's thread, so the list can animate just the days that changed.  The new
+ * items are also published to {@link ForecastModel} for the detail view.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastDiff> {
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final String mSortOrder;
+
+    // The last result, and its items for the next load to diff against
+    private ForecastDiff mResult;
+    private volatile List<ForecastItem> mItems = Collections.emptyList();
+    private boolean mObserving;
+
+    // Bumped whenever the weather changes.  A load queries only if it has changed since the
+    // items were queried, and otherwise formats those items again.
+    private final AtomicInteger mContentVersion = new AtomicInteger();
+    private volatile int mLoadingVersion;
+    private volatile int mItemsVersion = -1;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mSettingsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    Context context = getContext();
+                    if (key.equals(context.getString(R.string.pref_units_key))
+                            || key.equals(context.getString(R.string.pref_art_pack_key))) {
+                        onFormattingChanged();
+                    }
+                }
+            };
+
+    // The date changing at midnight, or the clock or time zone being changed
+    private final BroadcastReceiver mDateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onFormattingChanged();
+        }
+    };
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context);
+        mUri = uri;
+        mProjection = projection;
+        mSortOrder = sortOrder;
+    }
+
+    @Override
+    public ForecastDiff loadInBackground() {
+        int version = mContentVersion.get();
+        List<ForecastItem> items = version == mItemsVersion ? formatItems(mItems) : loadItems();
+        mLoadingVersion = version;
+        return ForecastDiff.compute(mItems, items);
+    }
+
+    // The items again for the current settings; those already formatted for them are kept
+    private List<ForecastItem> formatItems(List<ForecastItem> from) {
+        Context context = getContext();
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        List<ForecastItem> items = new ArrayList<>(from.size());
+        for (ForecastItem item : from) {
+            items.add(item.isFormattedFor(settings) ? item : new ForecastItem(context, item));
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    private List<ForecastItem> loadItems() {
+        Context context = getContext();
+        Cursor cursor = context.getContentResolver().query(mUri, mProjection, null, null,
+                mSortOrder);
+        if (null == cursor) return Collections.emptyList();
+        try {
+            boolean localGraphics = Utility.usingLocalGraphics(context);
+            List<ForecastItem> items = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                items.add(new ForecastItem(context, cursor, localGraphics));
+            }
+            return Collections.unmodifiableList(items);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(ForecastDiff result) {
+        if (isReset()) return;
+        if (result != mResult) {
+            // Not the last result delivered again, but the load that has just finished
+            mItemsVersion = mLoadingVersion;
+        }
+        mResult = result;
+        mItems = result.to;
+        ForecastModel.publish(WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri),
+                result.to);
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            // The cursor is closed once the items are built, so watch the uri instead.  Weather
+            // changes are announced on the weather root, which reaches observers beneath it.
+            getContext().getContentResolver().registerContentObserver(mUri, true, mObserver);
+            SettingsSnapshot.registerListener(getContext(), mSettingsListener);
+            IntentFilter dateFilter = new IntentFilter(Intent.ACTION_DATE_CHANGED);
+            dateFilter.addAction(Intent.ACTION_TIME_CHANGED);
+            dateFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            getContext().registerReceiver(mDateReceiver, dateFilter);
+            mObserving = true;
+        }
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void onContentChanged() {
+        // The weather has changed, so the next load has to query
+        mContentVersion.incrementAndGet();
+        super.onContentChanged();
+    }
+
+    // Reloads as onContentChanged does, but without the weather having changed.  If the loader
+    // is stopped, it reloads when next started.
+    private void onFormattingChanged() {
+        super.onContentChanged();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            SettingsSnapshot.unregisterListener(mSettingsListener);
+            getContext().unregisterReceiver(mDateReceiver);
+            mObserving = false;
+        }
+        mResult = null;
+        mItems = Collections.emptyList();
+        mItemsVersion = -1;
+    }
+}
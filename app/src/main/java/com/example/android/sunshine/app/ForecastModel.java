@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The forecast the list last loaded, shared so the detail view can show a selected day straight
+ * away instead of querying for it again.  {@link ForecastLoader} publishes each load's items
+ * here; anything showing a day from them listens for the next.
+ *
+ * Used from the main thread only.
+ */
+final class ForecastModel {
+
+    interface Listener {
+        /**
+         * The list has loaded again; days found before may have changed or gone.
+         */
+        void onForecastChanged();
+    }
+
+    private static String sLocation;
+    // In date order, as the list has them
+    private static List<ForecastItem> sItems = Collections.emptyList();
+    private static final List<Listener> sListeners = new ArrayList<>();
+
+    private ForecastModel() {
+    }
+
+    static void publish(String locationSetting, List<ForecastItem> items) {
+        sLocation = locationSetting;
+        sItems = items;
+        // Copied, so a listener can remove itself
+        for (Listener listener : new ArrayList<>(sListeners)) {
+            listener.onForecastChanged();
+        }
+    }
+
+    /**
+     * The list's item for a day at a location, or null if the list hasn't loaded it.
+     */
+    static ForecastItem find(String locationSetting, long date) {
+        if (locationSetting == null || !locationSetting.equals(sLocation)) return null;
+        List<ForecastItem> items = sItems;
+        int low = 0;
+        int high = items.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleDate = items.get(middle).date;
+            if (middleDate < date) {
+                low = middle + 1;
+            } else if (middleDate > date) {
+                high = middle - 1;
+            } else {
+                return items.get(middle);
+            }
+        }
+        return null;
+    }
+
+    static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.ViewTarget;
+
+/**
+ * A future day's forecast row drawn as one view, in place of list_item_forecast's nested
+ * layout of an ImageView and four TextViews.  It looks the same, except that the date and
+ * description are kept to a line each.
+ *
+ * Its height depends only on the fonts, so binding a new day never asks for a layout: the text
+ * is measured and ellipsized to fit once when bound (or when the width changes), and drawing is
+ * then just the icon and four drawText calls.  For accessibility the row is read as one item,
+ * from the same descriptions the separate views had.
+ */
+public class ForecastRowView extends View {
+
+    // What ListFrameMetrics times this row's passes as
+    private static final String MEASURE = "flat measure";
+    private static final String LAYOUT = "flat layout";
+    private static final String DRAW = "flat draw";
+
+    private final TextPaint mDayPaint;
+    private final TextPaint mDescriptionPaint;
+    private final TextPaint mHighPaint;
+    private final TextPaint mLowPaint;
+    private final ColorStateList mDayColors;
+
+    private final int mMinHeight;
+    private final int mPadding;
+    private final int mIconSize;
+    private final int mTemperatureWidth;
+    private final int mTemperatureSpace;
+
+    private String mDayText = "";
+    private String mDescriptionText = "";
+    private String mHighText = "";
+    private String mLowText = "";
+    private Drawable mIcon;
+    private final IconTarget mIconTarget = new IconTarget(this);
+
+    // Worked out in onLayout, or when bound once laid out
+    private String mDayShown = "";
+    private String mDescriptionShown = "";
+    private float mTextX;
+    private float mHighX;
+    private float mLowX;
+    private float mDayBaseline;
+    private float mDescriptionBaseline;
+    private float mTemperatureBaseline;
+    private int mTextWidth = -1;
+
+    /**
+     * Where to load a row's art into, when it comes from Glide.
+     */
+    static final class IconTarget extends ViewTarget<ForecastRowView, GlideDrawable> {
+        IconTarget(ForecastRowView view) {
+            super(view);
+        }
+
+        @Override
+        public void onLoadStarted(Drawable placeholder) {
+            view.setIcon(placeholder);
+        }
+
+        @Override
+        public void onLoadFailed(Exception e, Drawable errorDrawable) {
+            view.setIcon(errorDrawable);
+        }
+
+        @Override
+        public void onLoadCleared(Drawable placeholder) {
+            view.setIcon(placeholder);
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            view.setIcon(resource);
+        }
+    }
+
+    public ForecastRowView(Context context) {
+        super(context);
+        Resources resources = context.getResources();
+        int extraPadding = resources.getDimensionPixelSize(R.dimen.list_item_extra_padding);
+        mPadding = resources.getDimensionPixelSize(
+                R.dimen.abc_list_item_padding_horizontal_material);
+        // The outer padding of list_item_forecast, and the inner row's on top of it
+        ViewCompat.setPaddingRelative(this, extraPadding + mPadding, 0, extraPadding + mPadding, 0);
+        mIconSize = resources.getDimensionPixelSize(R.dimen.list_icon);
+        mTemperatureWidth = resources.getDimensionPixelSize(R.dimen.forecast_text_width);
+        mTemperatureSpace = resources.getDimensionPixelSize(R.dimen.forecast_temperature_space);
+
+        TypedValue value = new TypedValue();
+        context.getTheme().resolveAttribute(android.R.attr.listPreferredItemHeight, value, true);
+        mMinHeight = (int) value.getDimension(resources.getDisplayMetrics());
+        setBackgroundResource(R.drawable.touch_selector);
+
+        mDayPaint = createTextAppearancePaint(context, R.style.TextAppearance_AppCompat_Subhead);
+        mDayColors = getTextAppearanceColors(context, R.style.TextAppearance_AppCompat_Subhead);
+        mDescriptionPaint = createTextAppearancePaint(context,
+                R.style.TextAppearance_AppCompat_Body1);
+        mDescriptionPaint.setColor(ContextCompat.getColor(context, R.color.secondary_text));
+
+        Typeface light = Typeface.create("sans-serif-light", Typeface.NORMAL);
+        float temperatureSize = resources.getDimension(R.dimen.forecast_text_size);
+        mHighPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        mHighPaint.setTypeface(light);
+        mHighPaint.setTextSize(temperatureSize);
+        mHighPaint.setTextAlign(Paint.Align.RIGHT);
+        mHighPaint.setColor(ContextCompat.getColor(context, R.color.primary_text));
+        mLowPaint = new TextPaint(mHighPaint);
+        mLowPaint.setColor(ContextCompat.getColor(context, R.color.forecast_low_text));
+    }
+
+    // textSize and textColor, in the order obtainStyledAttributes needs them
+    private static final int[] TEXT_APPEARANCE = {
+            android.R.attr.textSize, android.R.attr.textColor};
+
+    private static TextPaint createTextAppearancePaint(Context context, int style) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        TypedArray a = context.obtainStyledAttributes(style, TEXT_APPEARANCE);
+        paint.setTextSize(a.getDimension(0, 0));
+        paint.setColor(a.getColor(1, 0));
+        a.recycle();
+        return paint;
+    }
+
+    private static ColorStateList getTextAppearanceColors(Context context, int style) {
+        TypedArray a = context.obtainStyledAttributes(style, TEXT_APPEARANCE);
+        ColorStateList colors = a.getColorStateList(1);
+        a.recycle();
+        return colors;
+    }
+
+    /**
+     * Shows a day.  Its art is set separately, with {@link #setIcon} or through
+     * {@link #getIconTarget}.
+     */
+    void bind(String dayText, ForecastItem item) {
+        mDayText = dayText;
+        mDescriptionText = item.description;
+        mHighText = item.highText;
+        mLowText = item.lowText;
+        setContentDescription(dayText + ", " + item.descriptionContentDescription + ", "
+                + item.highContentDescription + ", " + item.lowContentDescription);
+        if (mTextWidth >= 0) {
+            ellipsize();
+        }
+        invalidate();
+    }
+
+    void setIcon(Drawable icon) {
+        if (icon == mIcon) return;
+        if (mIcon != null) {
+            mIcon.setCallback(null);
+        }
+        mIcon = icon;
+        if (icon != null) {
+            icon.setCallback(this);
+            if (icon.isStateful()) {
+                icon.setState(getDrawableState());
+            }
+            layoutIcon();
+        }
+        invalidate();
+    }
+
+    IconTarget getIconTarget() {
+        return mIconTarget;
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mIcon || super.verifyDrawable(who);
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (mIcon != null && mIcon.isStateful()) {
+            mIcon.setState(getDrawableState());
+        }
+        if (mDayColors != null) {
+            int color = mDayColors.getColorForState(getDrawableState(),
+                    mDayColors.getDefaultColor());
+            if (color != mDayPaint.getColor()) {
+                mDayPaint.setColor(color);
+                invalidate();
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        long start = ListFrameMetrics.start();
+        int textHeight = lineHeight(mDayPaint) + lineHeight(mDescriptionPaint);
+        int contentHeight = Math.max(mIconSize, Math.max(textHeight, lineHeight(mHighPaint)));
+        int height = Math.max(mMinHeight, contentHeight + getPaddingTop() + getPaddingBottom());
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+        ListFrameMetrics.onRowPass(MEASURE, start);
+    }
+
+    // As a TextView with its default font padding
+    private static int lineHeight(Paint paint) {
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        return metrics.bottom - metrics.top;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        long start = ListFrameMetrics.start();
+        int width = right - left;
+        int height = bottom - top;
+        int contentStart = ViewCompat.getPaddingStart(this);
+        int contentEnd = width - ViewCompat.getPaddingEnd(this);
+
+        // Left to right, as in list_item_forecast: icon, the text taking what's left, then the
+        // two temperatures.  Mirrored afterwards for right-to-left.
+        int textStart = contentStart + mIconSize + mPadding;
+        int lowEnd = contentEnd;
+        int highEnd = lowEnd - mTemperatureWidth - mTemperatureSpace;
+        int textEnd = highEnd - mTemperatureWidth;
+        mTextWidth = Math.max(0, textEnd - textStart);
+
+        boolean rtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        mTextX = rtl ? width - textStart : textStart;
+        mHighX = rtl ? width - highEnd + mTemperatureWidth : highEnd;
+        mLowX = rtl ? width - lowEnd + mTemperatureWidth : lowEnd;
+        Paint.Align textAlign = rtl ? Paint.Align.RIGHT : Paint.Align.LEFT;
+        mDayPaint.setTextAlign(textAlign);
+        mDescriptionPaint.setTextAlign(textAlign);
+
+        // The text lines are centered together, as is each temperature
+        Paint.FontMetricsInt day = mDayPaint.getFontMetricsInt();
+        Paint.FontMetricsInt description = mDescriptionPaint.getFontMetricsInt();
+        int textTop = (height - lineHeight(mDayPaint) - lineHeight(mDescriptionPaint)) / 2;
+        mDayBaseline = textTop - day.top;
+        mDescriptionBaseline = textTop + lineHeight(mDayPaint) - description.top;
+        Paint.FontMetricsInt temperature = mHighPaint.getFontMetricsInt();
+        mTemperatureBaseline = (height - lineHeight(mHighPaint)) / 2 - temperature.top;
+
+        layoutIcon();
+        ellipsize();
+        ListFrameMetrics.onRowPass(LAYOUT, start);
+    }
+
+    private void layoutIcon() {
+        if (mIcon == null || getWidth() == 0) return;
+        boolean rtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        int left = rtl ? getWidth() - ViewCompat.getPaddingStart(this) - mIconSize
+                : ViewCompat.getPaddingStart(this);
+        int top = (getHeight() - mIconSize) / 2;
+        mIcon.setBounds(left, top, left + mIconSize, top + mIconSize);
+    }
+
+    private void ellipsize() {
+        mDayShown = TextUtils.ellipsize(mDayText, mDayPaint, mTextWidth,
+                TextUtils.TruncateAt.END).toString();
+        mDescriptionShown = TextUtils.ellipsize(mDescriptionText, mDescriptionPaint, mTextWidth,
+                TextUtils.TruncateAt.END).toString();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        // Timed around the background too, as the layout's rows are
+        long start = ListFrameMetrics.start();
+        super.draw(canvas);
+        ListFrameMetrics.onRowPass(DRAW, start);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mIcon != null) {
+            mIcon.draw(canvas);
+        }
+        canvas.drawText(mDayShown, mTextX, mDayBaseline, mDayPaint);
+        canvas.drawText(mDescriptionShown, mTextX, mDescriptionBaseline, mDescriptionPaint);
+        canvas.drawText(mHighText, mHighX, mTemperatureBaseline, mHighPaint);
+        canvas.drawText(mLowText, mLowX, mTemperatureBaseline, mLowPaint);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Forecast list rows kept between lists, and made ahead of the list needing them.
+ *
+ * Each configuration the list is shown in gets a RecycledViewPool that every ForecastFragment
+ * in it shares: a fragment hands its rows back when its view goes, and the next one (after a
+ * rotation and back, say, or the activity being recreated) starts with them.  Rows are inflated
+ * against the application context in the activity's theme, so a pooled row never holds on to
+ * the activity it was first shown in.
+ *
+ * The first list in a configuration also has a screen's worth of rows inflated on a background
+ * thread while its forecast loads, so the first layout finds them waiting.  They're inflated
+ * without AppCompat's view substitutions, as the support library's AsyncLayoutInflater would;
+ * the rows don't use anything those add.
+ *
+ * Used from the main thread, apart from {@link #getInflater()}.
+ */
+final class ForecastViewPool {
+
+    private static final String LOG_TAG = ForecastViewPool.class.getSimpleName();
+
+    // Enough to rotate back and forth without inflating anything again
+    private static final int MAX_CONFIGURATIONS = 2;
+    // Rows past those that fit on screen: one partly showing at each end
+    private static final int EXTRA_ROWS = 2;
+
+    private static final Map<String, ForecastViewPool> sPools =
+            new LinkedHashMap<>(MAX_CONFIGURATIONS, 0.75f, true);
+
+    private final RecyclerView.RecycledViewPool mPool = new RecyclerView.RecycledViewPool();
+    private final Context mContext;
+    // LayoutInflater keeps state while inflating, so each thread needs its own
+    private final ThreadLocal<LayoutInflater> mInflaters = new ThreadLocal<LayoutInflater>() {
+        @Override
+        protected LayoutInflater initialValue() {
+            return LayoutInflater.from(mContext).cloneInContext(mContext);
+        }
+    };
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private boolean mWarmed;
+
+    private ForecastViewPool(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * The pool for the activity's current configuration.
+     */
+    static ForecastViewPool get(Activity activity) {
+        String key = getConfigurationKey(activity.getResources().getConfiguration());
+        ForecastViewPool pool = sPools.get(key);
+        if (pool == null) {
+            pool = new ForecastViewPool(new ContextThemeWrapper(activity.getApplicationContext(),
+                    getThemeResource(activity)));
+            sPools.put(key, pool);
+            // Rows from a configuration two rotations ago won't be wanted again soon
+            Iterator<ForecastViewPool> oldest = sPools.values().iterator();
+            while (sPools.size() > MAX_CONFIGURATIONS) {
+                oldest.next().mPool.clear();
+                oldest.remove();
+            }
+        }
+        return pool;
+    }
+
+    // Everything a row's resources can vary by
+    private static String getConfigurationKey(Configuration config) {
+        return config.orientation + "/" + config.screenWidthDp + "x" + config.screenHeightDp
+                + "/" + config.smallestScreenWidthDp + "/" + config.densityDpi + "/"
+                + config.fontScale + "/" + config.uiMode + "/" + config.locale;
+    }
+
+    private static int getThemeResource(Activity activity) {
+        try {
+            return activity.getPackageManager()
+                    .getActivityInfo(activity.getComponentName(), 0).getThemeResource();
+        } catch (PackageManager.NameNotFoundException e) {
+            return activity.getApplicationInfo().theme;
+        }
+    }
+
+    /**
+     * An inflater for the calling thread that makes rows for this pool.
+     */
+    LayoutInflater getInflater() {
+        return mInflaters.get();
+    }
+
+    /**
+     * Has the list take its rows from the pool.  The list's adapter must already be set, as
+     * setting one after would empty the pool.
+     */
+    void attach(RecyclerView list) {
+        list.setRecycledViewPool(mPool);
+    }
+
+    /**
+     * Hands the list's rows back to the pool, once its view is going.
+     */
+    void detach(RecyclerView list) {
+        // Swapping rather than setting the adapter recycles the rows without emptying the pool
+        list.swapAdapter(null, true);
+    }
+
+    /**
+     * Sizes the pool for the list and, the first time, inflates a screen's worth of rows for it
+     * on a background thread.  Call once the list knows which view types it will show.
+     */
+    void prewarm(final RecyclerView list, final ForecastAdapter adapter, boolean useTodayLayout) {
+        final int todayRows = useTodayLayout ? 1 : 0;
+        final int futureDayRows = getRowsPerScreen() + EXTRA_ROWS - todayRows;
+        mPool.setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_TODAY, Math.max(todayRows, 1));
+        final int futureDayType = adapter.getFutureDayViewType();
+        mPool.setMaxRecycledViews(futureDayType, futureDayRows);
+        if (mWarmed) return;
+        mWarmed = true;
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Today's row first, since it's the first one laid out
+                for (int i = 0; i < todayRows; i++) {
+                    inflate(list, adapter, ForecastAdapter.VIEW_TYPE_TODAY);
+                }
+                for (int i = 0; i < futureDayRows; i++) {
+                    inflate(list, adapter, futureDayType);
+                }
+            }
+        });
+    }
+
+    // On the background thread.  Goes through createViewHolder so the holder knows its type.
+    private void inflate(RecyclerView list, ForecastAdapter adapter, int viewType) {
+        final RecyclerView.ViewHolder holder;
+        try {
+            holder = adapter.createViewHolder(list, viewType);
+        } catch (RuntimeException e) {
+            // Not worth failing over; the list will inflate it when it's needed
+            Log.w(LOG_TAG, "Couldn't inflate a row ahead of time", e);
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Dropped if the list has already filled the pool itself
+                mPool.putRecycledView(holder);
+            }
+        });
+    }
+
+    private int getRowsPerScreen() {
+        TypedValue rowHeight = new TypedValue();
+        mContext.getTheme().resolveAttribute(android.R.attr.listPreferredItemHeight, rowHeight,
+                true);
+        float minRowHeight = rowHeight.getDimension(mContext.getResources().getDisplayMetrics());
+        int screenHeight = mContext.getResources().getDisplayMetrics().heightPixels;
+        return minRowHeight <= 0 ? 0 : (int) Math.ceil(screenHeight / minRowHeight);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The date formats and format strings behind Utility's display helpers, built once per locale
+ * instead of on every call.  Date formats aren't thread-safe, so each thread gets its own set;
+ * strings are shared.  Both are rebuilt when the default locale changes, and after
+ * {@link #invalidate()}, which SystemConfigReceiver calls when the locale or time zone changes
+ * (date formats capture the zone when they're made).
+ */
+final class Formatters {
+
+    // Whole degrees in this range have their formatted strings kept once made
+    private static final int MIN_CACHED_DEGREES = -100;
+    private static final int MAX_CACHED_DEGREES = 150;
+
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+    private static volatile Strings sStrings;
+    private static final ThreadLocal<Dates> sDates = new ThreadLocal<>();
+
+    static final class Dates {
+        final Locale locale;
+        final int generation;
+        private final SimpleDateFormat mShortDate;
+        private final SimpleDateFormat mDayName;
+        private final SimpleDateFormat mMonthDay;
+        private final DateFormat mMediumDate;
+        // Reused for every date formatted, rather than boxing a Long and making a Date each time
+        private final Date mDate = new Date();
+
+        Dates(Locale locale, int generation) {
+            this.locale = locale;
+            this.generation = generation;
+            mShortDate = new SimpleDateFormat("EEE MMM dd", locale);
+            mDayName = new SimpleDateFormat("EEEE", locale);
+            mMonthDay = new SimpleDateFormat("MMMM dd", locale);
+            mMediumDate = DateFormat.getDateInstance(DateFormat.DEFAULT, locale);
+        }
+
+        private String format(DateFormat format, long millis) {
+            mDate.setTime(millis);
+            return format.format(mDate);
+        }
+
+        // "Mon Jun 03"
+        String formatShortDate(long millis) {
+            return format(mShortDate, millis);
+        }
+
+        // "Wednesday"
+        String formatDayName(long millis) {
+            return format(mDayName, millis);
+        }
+
+        // "June 24"
+        String formatMonthDay(long millis) {
+            return format(mMonthDay, millis);
+        }
+
+        // The locale's usual date, e.g. "Jun 24, 2015"
+        String formatMediumDate(long millis) {
+            return format(mMediumDate, millis);
+        }
+    }
+
+    static final class Strings {
+        final Locale locale;
+        final int generation;
+        final String today;
+        final String tomorrow;
+        final String temperatureFormat;
+        final String windKmhFormat;
+        final String windMphFormat;
+        // Filled in as they're needed.  Racing threads can only write the same string.
+        private final String[] mTemperatures =
+                new String[MAX_CACHED_DEGREES - MIN_CACHED_DEGREES + 1];
+
+        Strings(Context context, Locale locale, int generation) {
+            this.locale = locale;
+            this.generation = generation;
+            today = context.getString(R.string.today);
+            tomorrow = context.getString(R.string.tomorrow);
+            temperatureFormat = context.getString(R.string.format_temperature);
+            windKmhFormat = context.getString(R.string.format_wind_kmh);
+            windMphFormat = context.getString(R.string.format_wind_mph);
+        }
+
+        /**
+         * The same as String.format(temperatureFormat, degrees), which rounds to a whole degree.
+         */
+        String formatTemperature(double degrees) {
+            double rounded = Math.rint(degrees);
+            // Halves round away from zero in String.format but to even here, and anything that
+            // rounds to zero from below formats as "-0", so those aren't cached
+            boolean nearHalf = Math.abs(Math.abs(degrees - rounded) - 0.5) < 1e-9;
+            boolean negative = Double.doubleToRawLongBits(degrees) < 0;
+            if (nearHalf || (negative && rounded == 0)
+                    || rounded < MIN_CACHED_DEGREES || rounded > MAX_CACHED_DEGREES) {
+                return String.format(temperatureFormat, degrees);
+            }
+            int index = (int) rounded - MIN_CACHED_DEGREES;
+            String formatted = mTemperatures[index];
+            if (formatted == null) {
+                formatted = String.format(temperatureFormat, rounded);
+                mTemperatures[index] = formatted;
+            }
+            return formatted;
+        }
+    }
+
+    private Formatters() {
+    }
+
+    static void invalidate() {
+        sGeneration.incrementAndGet();
+    }
+
+    /**
+     * This thread's date formats for the current locale.
+     */
+    static Dates dates() {
+        Locale locale = Locale.getDefault();
+        int generation = sGeneration.get();
+        Dates dates = sDates.get();
+        if (dates == null || dates.generation != generation || !dates.locale.equals(locale)) {
+            dates = new Dates(locale, generation);
+            sDates.set(dates);
+        }
+        return dates;
+    }
+
+    static Strings strings(Context context) {
+        Locale locale = Locale.getDefault();
+        int generation = sGeneration.get();
+        Strings strings = sStrings;
+        if (strings == null || strings.generation != generation || !strings.locale.equals(locale)) {
+            strings = new Strings(context, locale, generation);
+            sStrings = strings;
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Frame timing for the forecast list's scroll path, collected in debug and benchmark builds
+ * (BuildConfig.FRAME_METRICS) and compiled down to nothing otherwise:
+ * <ul>
+ *     <li>the time between frames while the list is moving, and how many of them were janky,
+ *     meaning they missed at least one vsync;</li>
+ *     <li>how long the adapter spends inflating and binding rows, per view type;</li>
+ *     <li>how long each of the list's scroll listeners takes per scroll event;</li>
+ *     <li>how long a future day's row takes to measure, lay out and draw, so the layout's rows
+ *     can be compared with {@link ForecastRowView}'s.</li>
+ * </ul>
+ * The list gets these from Choreographer rather than the platform's FrameMetrics, which
+ * needs a newer SDK than the app compiles against; the gap between frames is what scrolling
+ * looks like anyway.  Everything here is used from the main thread only.
+ */
+public final class ListFrameMetrics {
+
+    public static final boolean ENABLED = BuildConfig.FRAME_METRICS;
+
+    /**
+     * MainActivity intent extra: how many days the forecast list should show, in place of the
+     * forecast's length, so the scroll benchmark has a long list to fling.  Only honored in the
+     * builds collecting these metrics.
+     */
+    public static final String EXTRA_LIST_DAYS = "com.example.android.sunshine.app.LIST_DAYS";
+
+    /**
+     * MainActivity intent extra: whether the forecast list draws its future days with
+     * {@link ForecastRowView}, in place of the flat_forecast_rows setting, so the scroll
+     * benchmark can compare both kinds of row.  Only honored in these builds too.
+     */
+    public static final String EXTRA_FLAT_ROWS = "com.example.android.sunshine.app.FLAT_ROWS";
+
+    // Frame times are kept to the millisecond up to this, and lumped together beyond it
+    private static final int MAX_HISTOGRAM_MILLIS = 250;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private static final class Timing {
+        int count;
+        long totalNanos;
+        long maxNanos;
+
+        void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        @Override
+        public String toString() {
+            return count + "x avg " + formatMicros(count == 0 ? 0 : totalNanos / count)
+                    + " max " + formatMicros(maxNanos);
+        }
+    }
+
+    private static final int[] sFrameHistogram = new int[MAX_HISTOGRAM_MILLIS + 1];
+    private static int sFrames;
+    private static int sJankyFrames;
+    private static int sDroppedFrames;
+    private static long sMaxFrameNanos;
+    private static final Map<String, Timing> sInflates = new LinkedHashMap<>();
+    private static final Map<String, Timing> sBinds = new LinkedHashMap<>();
+    private static final Map<String, Timing> sScrollListeners = new LinkedHashMap<>();
+    private static final Map<String, Timing> sRowPasses = new LinkedHashMap<>();
+
+    private static long sFramePeriodNanos;
+    private static long sLastFrameNanos;
+    private static int sScrollingLists;
+    private static boolean sFrameCallbackPosted;
+
+    private static final Choreographer.FrameCallback sFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    sFrameCallbackPosted = false;
+                    if (sScrollingLists == 0) {
+                        sLastFrameNanos = 0;
+                        return;
+                    }
+                    if (sLastFrameNanos != 0) {
+                        onFrame(frameTimeNanos - sLastFrameNanos);
+                    }
+                    sLastFrameNanos = frameTimeNanos;
+                    postFrameCallback();
+                }
+            };
+
+    private ListFrameMetrics() {
+    }
+
+    /**
+     * Times the list's frames whenever it's moving.
+     */
+    static void attach(RecyclerView recyclerView) {
+        if (!ENABLED) return;
+        if (sFramePeriodNanos == 0) {
+            WindowManager windowManager = (WindowManager) recyclerView.getContext()
+                    .getSystemService(Context.WINDOW_SERVICE);
+            sFramePeriodNanos = (long) (1000000000 / windowManager.getDefaultDisplay()
+                    .getRefreshRate());
+        }
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            private boolean mScrolling;
+
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                boolean scrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+                if (scrolling == mScrolling) return;
+                mScrolling = scrolling;
+                if (scrolling) {
+                    sScrollingLists++;
+                    // It may still be posted from the last scroll, if that only just stopped
+                    if (!sFrameCallbackPosted) {
+                        postFrameCallback();
+                    }
+                } else {
+                    // The frame callback sees this and stops itself
+                    sScrollingLists--;
+                }
+            }
+        });
+    }
+
+    private static void postFrameCallback() {
+        Choreographer.getInstance().postFrameCallback(sFrameCallback);
+        sFrameCallbackPosted = true;
+    }
+
+    /**
+     * Wraps one of the list's scroll listeners so its onScrolled is timed under that name.
+     */
+    static RecyclerView.OnScrollListener timed(final String name,
+                                               final RecyclerView.OnScrollListener listener) {
+        if (!ENABLED) return listener;
+        return new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                listener.onScrollStateChanged(recyclerView, newState);
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                long start = System.nanoTime();
+                listener.onScrolled(recyclerView, dx, dy);
+                timing(sScrollListeners, name).add(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Where to time an inflate, bind or row pass from; pass it to {@link #onInflated},
+     * {@link #onBound} or {@link #onRowPass} when done.
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    static void onInflated(String viewType, long start) {
+        // Rows inflated ahead of time, off the main thread, cost no frames
+        if (!ENABLED || Looper.myLooper() != Looper.getMainLooper()) return;
+        timing(sInflates, viewType).add(System.nanoTime() - start);
+    }
+
+    static void onBound(String viewType, long start) {
+        if (!ENABLED) return;
+        timing(sBinds, viewType).add(System.nanoTime() - start);
+    }
+
+    /**
+     * A row's measure, layout or draw, named for the kind of row and the pass.
+     */
+    static void onRowPass(String pass, long start) {
+        if (!ENABLED) return;
+        timing(sRowPasses, pass).add(System.nanoTime() - start);
+    }
+
+    private static Timing timing(Map<String, Timing> timings, String name) {
+        Timing timing = timings.get(name);
+        if (timing == null) {
+            timing = new Timing();
+            timings.put(name, timing);
+        }
+        return timing;
+    }
+
+    private static void onFrame(long nanos) {
+        sFrames++;
+        sMaxFrameNanos = Math.max(sMaxFrameNanos, nanos);
+        sFrameHistogram[(int) Math.min(nanos / NANOS_PER_MILLI, MAX_HISTOGRAM_MILLIS)]++;
+        // Half a period over allows for vsync jitter
+        long missed = (nanos + sFramePeriodNanos / 2) / sFramePeriodNanos - 1;
+        if (missed > 0) {
+            sJankyFrames++;
+            sDroppedFrames += missed;
+        }
+    }
+
+    public static int getFrameCount() {
+        return sFrames;
+    }
+
+    public static int getJankyFrameCount() {
+        return sJankyFrames;
+    }
+
+    /**
+     * The frame time, in whole milliseconds, that the given percentage of frames came in under.
+     */
+    public static int getFramePercentileMillis(int percent) {
+        int wanted = (int) Math.ceil(sFrames * percent / 100.0);
+        int seen = 0;
+        for (int millis = 0; millis <= MAX_HISTOGRAM_MILLIS; millis++) {
+            seen += sFrameHistogram[millis];
+            if (seen >= wanted && seen > 0) return millis;
+        }
+        return 0;
+    }
+
+    public static void reset() {
+        for (int i = 0; i < sFrameHistogram.length; i++) {
+            sFrameHistogram[i] = 0;
+        }
+        sFrames = 0;
+        sJankyFrames = 0;
+        sDroppedFrames = 0;
+        sMaxFrameNanos = 0;
+        sInflates.clear();
+        sBinds.clear();
+        sScrollListeners.clear();
+        sRowPasses.clear();
+    }
+
+    /**
+     * Everything collected since the last reset, on one line, e.g.
+     * <pre>
+     * List frames: 812, janky 37 (52 dropped), p50 16ms, p90 17ms, p99 33ms, max 67ms;
+     * inflate {today=1x avg 4210us max 4210us, ...}; bind {...}; scroll listeners {...};
+     * row passes {...}
+     * </pre>
+     */
+    public static String getReport() {
+        if (!ENABLED) return "List frame metrics aren't collected in this build";
+        return "List frames: " + sFrames + ", janky " + sJankyFrames + " (" + sDroppedFrames
+                + " dropped), p50 " + getFramePercentileMillis(50) + "ms, p90 "
+                + getFramePercentileMillis(90) + "ms, p99 " + getFramePercentileMillis(99)
+                + "ms, max " + sMaxFrameNanos / NANOS_PER_MILLI + "ms; inflate " + sInflates
+                + "; bind " + sBinds + "; scroll listeners " + sScrollListeners
+                + "; row passes " + sRowPasses;
+    }
+
+    private static String formatMicros(long nanos) {
+        return nanos / 1000 + "us";
+    }
+}
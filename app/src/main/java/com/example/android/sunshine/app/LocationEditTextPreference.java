@@ -19,18 +19,45 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FilterQueryProvider;
+import android.widget.ListView;
+import android.widget.SimpleCursorAdapter;
+
+import com.example.android.sunshine.app.data.CityCatalog;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.HashSet;
 
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
     private int mMinLength;
 
+    private static final String[] SUGGESTION_COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME
+    };
+    static final int COL_LOCATION_SETTING = 1;
+
+    private static final int MAX_CATALOG_SUGGESTIONS = 10;
+
+    // Suggestions from locations we have already fetched weather for, so a typo shows up as
+    // "no match" while typing instead of as an invalid location after a wasted sync.
+    private SimpleCursorAdapter mSuggestionAdapter;
+
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.getTheme().obtainStyledAttributes(
@@ -45,6 +72,100 @@ public class LocationEditTextPreference extends EditTextPreference {
     }
 
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, final EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+
+        final Context context = getContext();
+        mSuggestionAdapter = new SimpleCursorAdapter(context,
+                android.R.layout.simple_list_item_2,
+                null,
+                new String[]{WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                new int[]{android.R.id.text1, android.R.id.text2},
+                0);
+        // Filtering runs on the Filter's own worker thread, so the query never blocks typing
+        mSuggestionAdapter.setFilterQueryProvider(new FilterQueryProvider() {
+            @Override
+            public Cursor runQuery(CharSequence constraint) {
+                if (constraint == null || constraint.length() < mMinLength) {
+                    return null;
+                }
+                String query = constraint.toString();
+                Cursor known = context.getContentResolver().query(
+                        WeatherContract.LocationEntry.buildLocationSearchUri(query),
+                        SUGGESTION_COLUMNS,
+                        null,
+                        null,
+                        null);
+
+                // Then any other city from the offline catalog, so places we have never
+                // fetched can still be picked without a round trip to the server
+                HashSet<String> knownSettings = new HashSet<>();
+                if (known != null) {
+                    while (known.moveToNext()) {
+                        knownSettings.add(known.getString(COL_LOCATION_SETTING));
+                    }
+                    known.moveToPosition(-1);
+                }
+                MatrixCursor catalog = new MatrixCursor(SUGGESTION_COLUMNS);
+                for (CityCatalog.City city : CityCatalog.getInstance(context)
+                        .search(query, MAX_CATALOG_SUGGESTIONS)) {
+                    String setting = city.getLocationSetting();
+                    if (knownSettings.contains(setting)) continue;
+                    // Negative ids keep catalog rows apart from location table rows
+                    catalog.addRow(new Object[]{-city.id, setting, city.name});
+                }
+                if (known == null) return catalog;
+                return new MergeCursor(new Cursor[]{known, catalog});
+            }
+        });
+
+        ListView suggestions = new ListView(context);
+        suggestions.setAdapter(mSuggestionAdapter);
+        suggestions.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                Cursor cursor = mSuggestionAdapter.getCursor();
+                if (cursor != null && cursor.moveToPosition(position)) {
+                    editText.setText(cursor.getString(COL_LOCATION_SETTING));
+                    editText.setSelection(editText.length());
+                }
+            }
+        });
+
+        // The platform puts the EditText in a vertical container; the suggestions go under it
+        ViewGroup container = (ViewGroup) editText.getParent();
+        if (container != null) {
+            container.addView(suggestions, new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        }
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        super.onDialogClosed(positiveResult);
+        if (mSuggestionAdapter != null) {
+            mSuggestionAdapter.changeCursor(null);
+            mSuggestionAdapter = null;
+        }
+    }
+
+    /*
+        Whether the server should find the location, judged offline: it has to name exactly one
+        catalog city, unless it's a postal code, which the catalog doesn't hold.  Without a
+        catalog there's nothing to judge by, so only the length is checked.  The catalog lookup
+        is a binary search over the mapped file, cheap enough for every keystroke.
+     */
+    private boolean isValidLocation(String location) {
+        if (location.trim().length() < mMinLength) return false;
+        for (int i = 0; i < location.length(); i++) {
+            if (Character.isDigit(location.charAt(i))) return true;
+        }
+        CityCatalog catalog = CityCatalog.getInstance(getContext());
+        return catalog.size() == 0 || catalog.findExact(location) != null;
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
@@ -69,14 +190,11 @@ public class LocationEditTextPreference extends EditTextPreference {
                 if (d instanceof AlertDialog) {
                     AlertDialog dialog = (AlertDialog) d;
                     Button positiveButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
-                    // Check if the EditText is empty
-                    if (s.length() < mMinLength) {
-                        // Disable OK button
-                        positiveButton.setEnabled(false);
-                    } else {
-                        // Re-enable the button.
-                        positiveButton.setEnabled(true);
-                    }
+                    // Only allow what the server can be expected to find
+                    positiveButton.setEnabled(isValidLocation(s.toString()));
+                }
+                if (mSuggestionAdapter != null) {
+                    mSuggestionAdapter.getFilter().filter(s);
                 }
             }
         });
@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
@@ -43,6 +44,11 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private final static int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
     public static final String SENT_TOKEN_TO_SERVER = "sentTokenToServer";
 
+    // Startup steps run after the first frame
+    private static final String STEP_SYNC_ACCOUNT = "sync account";
+    private static final String STEP_PLAY_SERVICES = "play services";
+    private static final String STEP_GCM_TOKEN = "gcm token";
+
     private boolean mTwoPane;
     private String mLocation;
 
@@ -89,24 +95,46 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
-
-        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
-        // skip the registration and this device will not receive any downstream messages from
-        // our fake server. Because weather alerts are not a core feature of the app, this should
-        // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
-            }
-        }
+        // Nothing the first frame needs, so it waits until that's been drawn
+        final Context appContext = getApplicationContext();
+        new StartupOrchestrator()
+                .add(STEP_SYNC_ACCOUNT, new StartupOrchestrator.Step() {
+                    @Override
+                    public boolean run() {
+                        SunshineSyncAdapter.initializeSyncAdapter(appContext);
+                        return true;
+                    }
+                })
+                // If Google Play Services is up to date, we'll want to register GCM. If it is
+                // not, we'll skip the registration and this device will not receive any
+                // downstream messages from our fake server. Because weather alerts are not a core
+                // feature of the app, this should not affect the behavior of the app, from a user
+                // perspective.
+                .add(STEP_PLAY_SERVICES, new StartupOrchestrator.Step() {
+                    @Override
+                    public boolean run() {
+                        return checkPlayServices();
+                    }
+                })
+                // Because this is the initial creation of the app, we'll want to be certain we
+                // have a token. If we do not, then we will start the IntentService that will
+                // register this application with GCM.
+                .add(STEP_GCM_TOKEN, new StartupOrchestrator.Step() {
+                    @Override
+                    public boolean run() {
+                        SharedPreferences sharedPreferences =
+                                PreferenceManager.getDefaultSharedPreferences(appContext);
+                        boolean sentToken =
+                                sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+                        if (!sentToken) {
+                            appContext.startService(
+                                    new Intent(appContext, RegistrationIntentService.class));
+                        }
+                        return true;
+                    }
+                }, STEP_PLAY_SERVICES)
+                .startAfterFirstDraw(getWindow().getDecorView());
+        StartupReport.onActivityCreated();
     }
 
     @Override
@@ -153,21 +181,31 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
-            // In two-pane mode, show the detail view in this activity by
-            // adding or replacing the detail fragment using a
-            // fragment transaction.
-            Bundle args = new Bundle();
-            args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
+            // In two-pane mode, show the day in the detail fragment already here, which binds
+            // it straight from the list's items.  Only replace the fragment if there isn't one.
+            DetailFragment df = (DetailFragment)getSupportFragmentManager()
+                    .findFragmentByTag(DETAILFRAGMENT_TAG);
+            if ( null != df ) {
+                df.showDay(contentUri);
+            } else {
+                Bundle args = new Bundle();
+                args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
 
-            DetailFragment fragment = new DetailFragment();
-            fragment.setArguments(args);
+                DetailFragment fragment = new DetailFragment();
+                fragment.setArguments(args);
 
-            getSupportFragmentManager().beginTransaction()
-                    .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
-                    .commit();
+                getSupportFragmentManager().beginTransaction()
+                        .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
+                        .commit();
+            }
         } else {
             Intent intent = new Intent(this, DetailActivity.class)
                     .setData(contentUri);
+            if ( null == vh.mIconView ) {
+                // A flat row draws its icon itself, so there's no view to share
+                startActivity(intent);
+                return;
+            }
 
             ActivityOptionsCompat activityOptions =
                     ActivityOptionsCompat.makeSceneTransitionAnimation(this,
@@ -180,18 +218,25 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
      * Check the device to make sure it has the Google Play Services APK. If
      * it doesn't, display a dialog that allows users to download the APK from
      * the Google Play Store or enable it in the device's system settings.
+     * Called on the startup thread; the dialog is shown on the main thread.
      */
     private boolean checkPlayServices() {
-        GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
-        int resultCode = apiAvailability.isGooglePlayServicesAvailable(this);
+        final GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
+        final int resultCode = apiAvailability.isGooglePlayServicesAvailable(this);
         if (resultCode != ConnectionResult.SUCCESS) {
-            if (apiAvailability.isUserResolvableError(resultCode)) {
-                apiAvailability.getErrorDialog(this, resultCode,
-                        PLAY_SERVICES_RESOLUTION_REQUEST).show();
-            } else {
-                Log.i(LOG_TAG, "This device is not supported.");
-                finish();
-            }
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (isFinishing()) return;
+                    if (apiAvailability.isUserResolvableError(resultCode)) {
+                        apiAvailability.getErrorDialog(MainActivity.this, resultCode,
+                                PLAY_SERVICES_RESOLUTION_REQUEST).show();
+                    } else {
+                        Log.i(LOG_TAG, "This device is not supported.");
+                        finish();
+                    }
+                }
+            });
             return false;
         }
         return true;
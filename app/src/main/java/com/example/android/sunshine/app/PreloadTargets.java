@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+
+/**
+ * A fixed number of Glide targets for loads that are only wanted in the cache, handed out round
+ * robin.  Loading into a target clears whatever it last held, so at most that many of the loads
+ * are in flight at once, and a ring only ever cancels its own loads.
+ */
+final class PreloadTargets {
+
+    private final PreloadTarget[] mTargets;
+    private int mNext;
+
+    // Its size is never asked for, since ArtCache's requests set their own
+    private static final class PreloadTarget extends SimpleTarget<GlideDrawable> {
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Only wanted in the cache
+        }
+    }
+
+    PreloadTargets(int count) {
+        mTargets = new PreloadTarget[count];
+    }
+
+    Target<GlideDrawable> next() {
+        PreloadTarget target = mTargets[mNext];
+        if (target == null) {
+            target = new PreloadTarget();
+            mTargets[mNext] = target;
+        }
+        mNext = (mNext + 1) % mTargets.length;
+        return target;
+    }
+}
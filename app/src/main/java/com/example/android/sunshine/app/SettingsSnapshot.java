@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The settings the app reads all the time (per list row, widget, sync step and notification),
+ * read once into an immutable object.  A preference listener swaps in a fresh snapshot whenever
+ * anything changes, so readers just take the current one without touching SharedPreferences or
+ * looking up key strings.
+ *
+ * Code that reacts to a setting changing should register here rather than with
+ * SharedPreferences: listeners registered here are called after the snapshot has been rebuilt,
+ * where SharedPreferences calls its listeners in no particular order.
+ */
+public final class SettingsSnapshot {
+
+    public final String location;
+    public final boolean metric;
+    // The art pack's url format, and whether it's the pack we have locally
+    public final String artPackUrl;
+    public final boolean localGraphics;
+    @SunshineSyncAdapter.LocationStatus
+    public final int locationStatus;
+    public final boolean notificationsEnabled;
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only holds its listeners weakly, so this is what keeps ours alive
+    private static SharedPreferences.OnSharedPreferenceChangeListener sPreferenceListener;
+    private static final CopyOnWriteArrayList<SharedPreferences.OnSharedPreferenceChangeListener>
+            sListeners = new CopyOnWriteArrayList<>();
+
+    @SuppressWarnings("ResourceType")
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        metric = prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPackUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        localGraphics = artPackUrl.equals(sunshineArtPack);
+        locationStatus = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key), Boolean.parseBoolean(
+                        context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * The current settings.  Cheap enough to call per row.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot current = sCurrent;
+        if (current == null) {
+            current = initialize(context.getApplicationContext());
+        }
+        return current;
+    }
+
+    private static synchronized SettingsSnapshot initialize(final Context appContext) {
+        if (sCurrent == null) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sPreferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    rebuild(appContext, sharedPreferences);
+                    for (SharedPreferences.OnSharedPreferenceChangeListener listener : sListeners) {
+                        listener.onSharedPreferenceChanged(sharedPreferences, key);
+                    }
+                }
+            };
+            // Register before reading, so a change made in between still triggers a rebuild
+            prefs.registerOnSharedPreferenceChangeListener(sPreferenceListener);
+            rebuild(appContext, prefs);
+        }
+        return sCurrent;
+    }
+
+    private static synchronized void rebuild(Context appContext, SharedPreferences prefs) {
+        sCurrent = new SettingsSnapshot(appContext, prefs);
+    }
+
+    /**
+     * Rereads the settings now, for code that has just written one and reads it back before the
+     * change listeners have had a chance to run (they run on the main thread).
+     */
+    public static void refresh(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (sCurrent == null) {
+            initialize(appContext);
+        } else {
+            rebuild(appContext, PreferenceManager.getDefaultSharedPreferences(appContext));
+        }
+    }
+
+    /**
+     * Calls the listener, on the main thread, whenever a preference changes and after the
+     * snapshot reflects the change.  Must be unregistered again, as it's held strongly.
+     */
+    public static void registerListener(Context context,
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        get(context);
+        sListeners.addIfAbsent(listener);
+    }
+
+    public static void unregisterListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        sListeners.remove(listener);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs startup work that the first frame doesn't need on a background thread once that frame
+ * has been drawn.  Steps run one at a time in the order they were added, each in a trace
+ * section of its own, and a step can depend on earlier ones: if any of them failed or was
+ * skipped, so is it.  How long each took goes into the {@link StartupReport}.
+ */
+final class StartupOrchestrator {
+
+    interface Step {
+        /**
+         * Does the step's work, on the startup thread.
+         *
+         * @return false if steps depending on this one shouldn't run
+         */
+        boolean run();
+    }
+
+    private static final class Entry {
+        final String name;
+        final Step step;
+        final String[] dependencies;
+
+        Entry(String name, Step step, String[] dependencies) {
+            this.name = name;
+            this.step = step;
+            this.dependencies = dependencies;
+        }
+    }
+
+    // One thread, so steps from successive activities never run at the same time either
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "Startup");
+                }
+            });
+
+    private final List<Entry> mEntries = new ArrayList<>();
+    private final Set<String> mNames = new HashSet<>();
+
+    /**
+     * Adds a step to run after those already added.  Its dependencies must be among them.
+     */
+    StartupOrchestrator add(String name, Step step, String... dependencies) {
+        for (String dependency : dependencies) {
+            if (!mNames.contains(dependency)) {
+                throw new IllegalArgumentException(
+                        "Step " + name + " depends on " + dependency + ", which isn't added yet");
+            }
+        }
+        if (!mNames.add(name)) {
+            throw new IllegalArgumentException("Step " + name + " was already added");
+        }
+        mEntries.add(new Entry(name, step, dependencies));
+        return this;
+    }
+
+    /**
+     * Runs the steps once the view's window has drawn its first frame.
+     */
+    void startAfterFirstDraw(final View view) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from the pre-draw, this runs once the frame has been drawn
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        StartupReport.onFirstFrame();
+                        start();
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Runs the steps now.
+     */
+    void start() {
+        final List<Entry> entries = new ArrayList<>(mEntries);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runSteps(entries);
+            }
+        });
+    }
+
+    private static void runSteps(List<Entry> entries) {
+        Set<String> failed = new HashSet<>();
+        for (Entry entry : entries) {
+            boolean skip = false;
+            for (String dependency : entry.dependencies) {
+                skip |= failed.contains(dependency);
+            }
+            if (skip) {
+                failed.add(entry.name);
+                StartupReport.onStep(entry.name, 0, true);
+                continue;
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            boolean succeeded = false;
+            Trace.beginSection("Startup: " + entry.name);
+            try {
+                succeeded = entry.step.run();
+            } finally {
+                Trace.endSection();
+                if (!succeeded) {
+                    failed.add(entry.name);
+                }
+                StartupReport.onStep(entry.name, SystemClock.elapsedRealtime() - start, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * How long a cold start took to reach each of its milestones, measured from when the process
+ * started (as near as app code can tell, which is when {@link SunshineApplication} is loaded).
+ * Each milestone is recorded the first time it's reached in the process and logged as it is;
+ * once the first frame has been drawn, the forecast list has loaded and its first row has been
+ * bound (if it has any), the whole report is logged on one line, with -1 for anything not
+ * reached.  Steps that finish after that are only logged on their own.
+ */
+public final class StartupReport {
+
+    private static final String LOG_TAG = StartupReport.class.getSimpleName();
+
+    static final long NOT_REACHED = -1;
+
+    private static long sProcessStart = NOT_REACHED;
+    private static long sApplicationCreated = NOT_REACHED;
+    private static long sActivityCreated = NOT_REACHED;
+    private static long sFirstFrame = NOT_REACHED;
+    private static long sFirstLoadFinished = NOT_REACHED;
+    private static boolean sFirstLoadEmpty;
+    // Checked on every bind, so readable without the lock
+    private static volatile long sFirstRowBound = NOT_REACHED;
+    private static final StringBuilder sSteps = new StringBuilder();
+    private static boolean sReported;
+
+    private StartupReport() {
+    }
+
+    static synchronized void onProcessStart() {
+        if (sProcessStart == NOT_REACHED) {
+            sProcessStart = SystemClock.elapsedRealtime();
+        }
+    }
+
+    static synchronized void onApplicationCreated() {
+        sApplicationCreated = mark(sApplicationCreated, "application created");
+    }
+
+    static synchronized void onActivityCreated() {
+        sActivityCreated = mark(sActivityCreated, "activity created");
+    }
+
+    static synchronized void onFirstFrame() {
+        sFirstFrame = mark(sFirstFrame, "first frame");
+        maybeReport();
+    }
+
+    /**
+     * The forecast list's loader delivered for the first time, with no rows if empty.  With
+     * no rows, the report doesn't wait for one to be bound.
+     */
+    static synchronized void onFirstLoadFinished(boolean empty) {
+        if (sFirstLoadFinished == NOT_REACHED) {
+            sFirstLoadEmpty = empty;
+        }
+        sFirstLoadFinished = mark(sFirstLoadFinished, "first load finished");
+        maybeReport();
+    }
+
+    static synchronized void onFirstRowBound() {
+        sFirstRowBound = mark(sFirstRowBound, "first row bound");
+        maybeReport();
+    }
+
+    /**
+     * A deferred startup step finished, or was skipped, taking this long.
+     */
+    static synchronized void onStep(String name, long millis, boolean skipped) {
+        if (sSteps.length() > 0) sSteps.append(", ");
+        sSteps.append(name).append(' ').append(skipped ? "skipped" : millis + "ms");
+        Log.d(LOG_TAG, "Startup step " + name + (skipped ? " skipped" : " took " + millis + "ms"));
+    }
+
+    static boolean hasFirstRowBound() {
+        return sFirstRowBound != NOT_REACHED;
+    }
+
+    // The first time, records now and logs it; after that, keeps what was recorded
+    private static long mark(long current, String milestone) {
+        if (current != NOT_REACHED) return current;
+        long now = SystemClock.elapsedRealtime();
+        if (sProcessStart != NOT_REACHED) {
+            Log.d(LOG_TAG, "Startup " + milestone + " at " + (now - sProcessStart) + "ms");
+        }
+        return now;
+    }
+
+    private static long sinceStart(long time) {
+        if (time == NOT_REACHED || sProcessStart == NOT_REACHED) return NOT_REACHED;
+        return time - sProcessStart;
+    }
+
+    private static void maybeReport() {
+        if (sReported || sFirstFrame == NOT_REACHED || sFirstLoadFinished == NOT_REACHED
+                || (sFirstRowBound == NOT_REACHED && !sFirstLoadEmpty)) {
+            return;
+        }
+        sReported = true;
+        // benchmark/cold_start.sh parses this line
+        Log.i(LOG_TAG, "Startup report: application " + sinceStart(sApplicationCreated)
+                + "ms, activity " + sinceStart(sActivityCreated)
+                + "ms, first frame " + sinceStart(sFirstFrame)
+                + "ms, first load " + sinceStart(sFirstLoadFinished)
+                + "ms, first row " + sinceStart(sFirstRowBound)
+                + "ms, steps [" + sSteps + "]");
+    }
+}
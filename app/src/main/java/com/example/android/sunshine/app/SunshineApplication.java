@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Application;
+import android.os.Process;
+
+import com.example.android.sunshine.app.data.DayMath;
+
+/**
+ * Marks the start of the process for the {@link StartupReport}: this is the first of the app's
+ * classes to be loaded.
+ */
+public class SunshineApplication extends Application {
+
+    static {
+        StartupReport.onProcessStart();
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupReport.onApplicationCreated();
+        // Builds the day table before the first list or sync asks for a date
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                DayMath.warmUp();
+            }
+        }, "DayMath").start();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.widget.FrameLayout;
+
+/**
+ * The root of list_item_forecast, which times its measure, layout and draw (children and all)
+ * with {@link ListFrameMetrics}, for comparison with {@link ForecastRowView}.  Otherwise just a
+ * FrameLayout.
+ */
+public class TimedFrameLayout extends FrameLayout {
+
+    private static final String MEASURE = "xml measure";
+    private static final String LAYOUT = "xml layout";
+    private static final String DRAW = "xml draw";
+
+    public TimedFrameLayout(Context context) {
+        super(context);
+    }
+
+    public TimedFrameLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public TimedFrameLayout(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        long start = ListFrameMetrics.start();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        ListFrameMetrics.onRowPass(MEASURE, start);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        long start = ListFrameMetrics.start();
+        super.onLayout(changed, left, top, right, bottom);
+        ListFrameMetrics.onRowPass(LAYOUT, start);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        long start = ListFrameMetrics.start();
+        super.draw(canvas);
+        ListFrameMetrics.onRowPass(DRAW, start);
+    }
+}
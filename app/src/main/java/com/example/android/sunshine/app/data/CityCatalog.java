@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Read only view of the bundled city catalog written by {@link CityCatalogWriter}.  The asset is
+ * memory mapped, so opening it only touches the header and lookups page in just the records
+ * they visit; nothing about the catalog is copied onto the heap.  All reads are absolute, so a
+ * single instance can be shared between threads.
+ *
+ * When the asset isn't packaged the catalog is simply empty and every lookup misses.
+ */
+public class CityCatalog {
+    private static final String LOG_TAG = CityCatalog.class.getSimpleName();
+
+    static final String ASSET_NAME = "city_catalog.bin";
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private static final int MAX_SEARCH_SCAN = 2000;
+
+    private static final CityCatalog EMPTY = new CityCatalog();
+    private static CityCatalog sInstance;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mCellDegrees;
+    private final int mCols;
+    private final int mRows;
+    private final int mRecords;
+    private final int mCellIndex;
+    private final int mCellEntries;
+    private final int mPool;
+
+    /**
+     * One city from the catalog.
+     */
+    public static final class City {
+        public final int id;
+        public final String name;
+        public final String country;
+        public final double lat;
+        public final double lon;
+
+        City(int id, String name, String country, double lat, double lon) {
+            this.id = id;
+            this.name = name;
+            this.country = country;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        /**
+         * The form OpenWeatherMap understands as a "q" parameter, e.g. "London,GB".
+         */
+        public String getLocationSetting() {
+            return country.length() == 0 ? name : name + "," + country;
+        }
+
+        @Override
+        public String toString() {
+            return getLocationSetting() + " (" + id + ")";
+        }
+    }
+
+    public static synchronized CityCatalog getInstance(Context context) {
+        if (sInstance == null) {
+            try {
+                sInstance = openAsset(context.getApplicationContext());
+            } catch (IOException e) {
+                Log.i(LOG_TAG, "No city catalog available: " + e.getMessage());
+                sInstance = EMPTY;
+            }
+        }
+        return sInstance;
+    }
+
+    private static CityCatalog openAsset(Context context) throws IOException {
+        // Needs the asset to be stored uncompressed, see aaptOptions in build.gradle
+        AssetFileDescriptor afd = context.getAssets().openFd(ASSET_NAME);
+        FileInputStream stream = afd.createInputStream();
+        try {
+            FileChannel channel = stream.getChannel();
+            return new CityCatalog(channel.map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getDeclaredLength()));
+        } finally {
+            // The mapping stays valid after the descriptor is closed
+            stream.close();
+        }
+    }
+
+    static CityCatalog open(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            return new CityCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            stream.close();
+        }
+    }
+
+    private CityCatalog() {
+        mBuffer = null;
+        mCount = 0;
+        mCellDegrees = CityCatalogWriter.DEFAULT_CELL_DEGREES;
+        mCols = mRows = 0;
+        mRecords = mCellIndex = mCellEntries = mPool = 0;
+    }
+
+    CityCatalog(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < CityCatalogWriter.HEADER_SIZE
+                || buffer.getInt(0) != CityCatalogWriter.MAGIC
+                || buffer.getInt(4) != CityCatalogWriter.VERSION) {
+            throw new IOException("Not a city catalog");
+        }
+        mBuffer = buffer;
+        mCount = buffer.getInt(CityCatalogWriter.HEADER_COUNT);
+        mCellDegrees = buffer.getInt(CityCatalogWriter.HEADER_CELL_DEGREES);
+        mCols = 360 / mCellDegrees;
+        mRows = 180 / mCellDegrees;
+        mRecords = buffer.getInt(CityCatalogWriter.HEADER_RECORDS);
+        mCellIndex = buffer.getInt(CityCatalogWriter.HEADER_CELL_INDEX);
+        mCellEntries = buffer.getInt(CityCatalogWriter.HEADER_CELL_ENTRIES);
+        mPool = buffer.getInt(CityCatalogWriter.HEADER_POOL);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Cities whose name starts with the query, in name order.  Anything after a comma narrows
+     * the country, so "london, g" only returns cities in countries starting with G.
+     */
+    public List<City> search(String query, int limit) {
+        if (mCount == 0 || query == null) return Collections.emptyList();
+        String[] parts = splitQuery(query);
+        byte[] prefix = CityCatalogWriter.normalize(parts[0]).getBytes(CityCatalogWriter.UTF_8);
+        if (prefix.length == 0) return Collections.emptyList();
+
+        // A one letter prefix with a country filter could otherwise walk a big slice of the
+        // catalog, so give up after a bounded number of records
+        int start = lowerBound(prefix);
+        int end = Math.min(mCount, start + Math.max(limit, MAX_SEARCH_SCAN));
+        List<City> results = new ArrayList<>();
+        for (int i = start; i < end && results.size() < limit; i++) {
+            if (!keyStartsWith(i, prefix)) break;
+            if (countryMatches(i, parts[1], false)) results.add(readCity(i));
+        }
+        return results;
+    }
+
+    /**
+     * The city a location setting names, if it names exactly one: "Paris,FR" is found, but a
+     * bare "Springfield" is ambiguous and returns null.
+     */
+    public City findExact(String locationSetting) {
+        if (mCount == 0 || locationSetting == null) return null;
+        String[] parts = splitQuery(locationSetting);
+        byte[] key = CityCatalogWriter.normalize(parts[0]).getBytes(CityCatalogWriter.UTF_8);
+        if (key.length == 0) return null;
+
+        int found = -1;
+        for (int i = lowerBound(key); i < mCount && compareKey(i, key) == 0; i++) {
+            if (!countryMatches(i, parts[1], true)) continue;
+            if (found != -1) return null;
+            found = i;
+        }
+        return found == -1 ? null : readCity(found);
+    }
+
+    /**
+     * The catalog city closest to the given point, or null for an empty catalog.  The grid is
+     * searched in growing rings of cells around the point until no unvisited cell can hold
+     * anything closer than the best city so far.
+     */
+    public City findNearest(double lat, double lon) {
+        if (mCount == 0) return null;
+        final int center = CityCatalogWriter.cellOf(lat, lon, mCellDegrees);
+        final int centerRow = center / mCols;
+        final int centerCol = center % mCols;
+        final int maxRing = Math.max(mRows, mCols / 2);
+
+        Nearest nearest = new Nearest();
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Only the border of each ring is new; the inside was searched by the smaller rings
+            final int span = Math.min(2 * ring + 1, mCols);
+            for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                if (row < 0 || row >= mRows) continue;
+                if (row == centerRow - ring || row == centerRow + ring) {
+                    for (int i = 0; i < span; i++) {
+                        searchCell(row, centerCol - ring + i, lat, lon, nearest);
+                    }
+                } else if (2 * ring <= mCols) {
+                    // Once the ring is wider than the globe, its sides wrap onto cells already
+                    // searched
+                    searchCell(row, centerCol - ring, lat, lon, nearest);
+                    if (2 * ring < mCols) searchCell(row, centerCol + ring, lat, lon, nearest);
+                }
+            }
+            if (nearest.record != -1 && nearest.distance <= ringLowerBoundKm(lat, ring)) break;
+        }
+        int best = nearest.record;
+        return best == -1 ? null : readCity(best);
+    }
+
+    private static final class Nearest {
+        int record = -1;
+        double distance = Double.MAX_VALUE;
+    }
+
+    private void searchCell(int row, int col, double lat, double lon, Nearest nearest) {
+        int cell = row * mCols + ((col % mCols) + mCols) % mCols;
+        int end = mBuffer.getInt(mCellIndex + (cell + 1) * 4);
+        for (int e = mBuffer.getInt(mCellIndex + cell * 4); e < end; e++) {
+            int record = mBuffer.getInt(mCellEntries + e * 4);
+            double distance = distanceKm(lat, lon, recordLat(record), recordLon(record));
+            if (distance < nearest.distance) {
+                nearest.distance = distance;
+                nearest.record = record;
+            }
+        }
+    }
+
+    /*
+        Anything outside ring r is at least r whole cells away from the point, either in latitude
+        or in longitude.  From the haversine formula, a latitude gap alone gives at least R * dLat,
+        and a longitude gap between points no further than farthestLat from the equator gives at
+        least 2R * asin(cos(farthestLat) * sin(dLon / 2)).
+     */
+    private double ringLowerBoundKm(double lat, int ring) {
+        double degrees = ring * mCellDegrees;
+        double farthestLat = Math.min(90, Math.abs(lat) + degrees + mCellDegrees);
+        double byLat = Math.toRadians(degrees) * EARTH_RADIUS_KM;
+        double byLon = 2 * EARTH_RADIUS_KM * Math.asin(Math.cos(Math.toRadians(farthestLat))
+                * Math.sin(Math.toRadians(Math.min(180, degrees)) / 2));
+        return Math.min(byLat, byLon);
+    }
+
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static String[] splitQuery(String query) {
+        int comma = query.indexOf(',');
+        if (comma < 0) return new String[]{query, ""};
+        return new String[]{query.substring(0, comma),
+                query.substring(comma + 1).trim().toUpperCase(Locale.US)};
+    }
+
+    private int recordOffset(int record) {
+        return mRecords + record * CityCatalogWriter.RECORD_SIZE;
+    }
+
+    private double recordLat(int record) {
+        return mBuffer.getInt(recordOffset(record) + CityCatalogWriter.RECORD_LAT)
+                / CityCatalogWriter.COORD_SCALE;
+    }
+
+    private double recordLon(int record) {
+        return mBuffer.getInt(recordOffset(record) + CityCatalogWriter.RECORD_LON)
+                / CityCatalogWriter.COORD_SCALE;
+    }
+
+    private boolean countryMatches(int record, String country, boolean exact) {
+        if (country.length() == 0) return true;
+        int offset = recordOffset(record) + CityCatalogWriter.RECORD_COUNTRY;
+        if (country.length() > 2) return false;
+        for (int i = 0; i < country.length(); i++) {
+            if (mBuffer.get(offset + i) != country.charAt(i)) return false;
+        }
+        return !exact || country.length() == 2;
+    }
+
+    // First record whose key is not less than the given key
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compareKey(int record, byte[] key) {
+        int offset = recordOffset(record);
+        int start = mPool + mBuffer.getInt(offset + CityCatalogWriter.RECORD_KEY);
+        int length = mBuffer.get(offset + CityCatalogWriter.RECORD_KEY_LENGTH) & 0xFF;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (mBuffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        return length - key.length;
+    }
+
+    private boolean keyStartsWith(int record, byte[] prefix) {
+        int offset = recordOffset(record);
+        int start = mPool + mBuffer.getInt(offset + CityCatalogWriter.RECORD_KEY);
+        int length = mBuffer.get(offset + CityCatalogWriter.RECORD_KEY_LENGTH) & 0xFF;
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (mBuffer.get(start + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private City readCity(int record) {
+        int offset = recordOffset(record);
+        int nameStart = mPool + mBuffer.getInt(offset + CityCatalogWriter.RECORD_NAME);
+        int nameLength = mBuffer.get(offset + CityCatalogWriter.RECORD_NAME_LENGTH) & 0xFF;
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = mBuffer.get(nameStart + i);
+        }
+        char c0 = (char) mBuffer.get(offset + CityCatalogWriter.RECORD_COUNTRY);
+        char c1 = (char) mBuffer.get(offset + CityCatalogWriter.RECORD_COUNTRY + 1);
+        String country = new String(new char[]{c0, c1}).trim();
+        return new City(mBuffer.getInt(offset + CityCatalogWriter.RECORD_ID),
+                new String(name, CityCatalogWriter.UTF_8), country,
+                recordLat(record), recordLon(record));
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the binary city catalog read by {@link CityCatalog}.  This class is plain Java so the
+ * catalog-tool module can also compile it on the build machine, where the app's
+ * generateCityCatalog task uses it to turn OpenWeatherMap's bulk city list into the asset.
+ *
+ * Layout, all big endian:
+ *   header     magic, version, city count, grid cell size in degrees, then the offsets of the
+ *              records, the grid cell index, the grid entries and the string pool, and the pool
+ *              length
+ *   records    one fixed size record per city, sorted by normalized name: OWM id, lat and lon in
+ *              1e-5 degrees, name and key offsets into the pool, name and key lengths, and the
+ *              two letter country code
+ *   cell index for every grid cell, the position of its first entry (plus one final end marker)
+ *   entries    record numbers, grouped by grid cell
+ *   pool       UTF-8 display names and normalized search keys
+ */
+public class CityCatalogWriter {
+
+    static final int MAGIC = 0x53434331; // "SCC1"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 36;
+    static final int RECORD_SIZE = 24;
+
+    // Offsets inside the header
+    static final int HEADER_COUNT = 8;
+    static final int HEADER_CELL_DEGREES = 12;
+    static final int HEADER_RECORDS = 16;
+    static final int HEADER_CELL_INDEX = 20;
+    static final int HEADER_CELL_ENTRIES = 24;
+    static final int HEADER_POOL = 28;
+
+    // Offsets inside a record
+    static final int RECORD_ID = 0;
+    static final int RECORD_LAT = 4;
+    static final int RECORD_LON = 8;
+    static final int RECORD_NAME = 12;
+    static final int RECORD_KEY = 16;
+    static final int RECORD_NAME_LENGTH = 20;
+    static final int RECORD_KEY_LENGTH = 21;
+    static final int RECORD_COUNTRY = 22;
+
+    static final int DEFAULT_CELL_DEGREES = 2;
+    static final double COORD_SCALE = 1e5;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    private static final class Entry {
+        final int id;
+        final String name;
+        final String country;
+        final int lat;
+        final int lon;
+        final byte[] nameBytes;
+        final byte[] keyBytes;
+
+        Entry(int id, String name, String country, double lat, double lon) {
+            this.id = id;
+            this.name = name;
+            this.country = country;
+            this.lat = (int) Math.round(lat * COORD_SCALE);
+            this.lon = (int) Math.round(lon * COORD_SCALE);
+            this.nameBytes = truncate(name.getBytes(UTF_8));
+            this.keyBytes = truncate(normalize(name).getBytes(UTF_8));
+        }
+    }
+
+    public void add(int owmId, String name, String countryCode, double lat, double lon) {
+        if (name == null || name.trim().length() == 0) return;
+        String country = countryCode == null ? "" : countryCode.trim().toUpperCase(Locale.US);
+        if (country.length() > 2) country = country.substring(0, 2);
+        mEntries.add(new Entry(owmId, name.trim(), country, lat, lon));
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public void write(OutputStream os) throws IOException {
+        write(os, DEFAULT_CELL_DEGREES);
+    }
+
+    public void write(OutputStream os, int cellDegrees) throws IOException {
+        final List<Entry> entries = new ArrayList<>(mEntries);
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                int c = compareBytes(lhs.keyBytes, rhs.keyBytes);
+                if (c != 0) return c;
+                c = lhs.country.compareTo(rhs.country);
+                return c != 0 ? c : (lhs.id < rhs.id ? -1 : (lhs.id == rhs.id ? 0 : 1));
+            }
+        });
+
+        // String pool; a key equal to its name shares the name's bytes
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        int[] nameOffsets = new int[entries.size()];
+        int[] keyOffsets = new int[entries.size()];
+        HashMap<String, Integer> pooled = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            nameOffsets[i] = intern(pool, pooled, e.nameBytes);
+            keyOffsets[i] = intern(pool, pooled, e.keyBytes);
+        }
+
+        // Bucket the records into the grid
+        final int cols = 360 / cellDegrees;
+        final int rows = 180 / cellDegrees;
+        int[] cellCounts = new int[cols * rows + 1];
+        int[] cellOfEntry = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            cellOfEntry[i] = cellOf(e.lat / COORD_SCALE, e.lon / COORD_SCALE, cellDegrees);
+            cellCounts[cellOfEntry[i] + 1]++;
+        }
+        int[] cellStarts = new int[cols * rows + 1];
+        for (int c = 1; c <= cols * rows; c++) {
+            cellStarts[c] = cellStarts[c - 1] + cellCounts[c];
+        }
+        int[] cellEntries = new int[entries.size()];
+        int[] fill = new int[cols * rows];
+        for (int i = 0; i < entries.size(); i++) {
+            int cell = cellOfEntry[i];
+            cellEntries[cellStarts[cell] + fill[cell]++] = i;
+        }
+
+        final int recordsOffset = HEADER_SIZE;
+        final int cellIndexOffset = recordsOffset + entries.size() * RECORD_SIZE;
+        final int cellEntriesOffset = cellIndexOffset + cellStarts.length * 4;
+        final int poolOffset = cellEntriesOffset + cellEntries.length * 4;
+
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        out.writeInt(cellDegrees);
+        out.writeInt(recordsOffset);
+        out.writeInt(cellIndexOffset);
+        out.writeInt(cellEntriesOffset);
+        out.writeInt(poolOffset);
+        out.writeInt(pool.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            out.writeInt(e.id);
+            out.writeInt(e.lat);
+            out.writeInt(e.lon);
+            out.writeInt(nameOffsets[i]);
+            out.writeInt(keyOffsets[i]);
+            out.writeByte(e.nameBytes.length);
+            out.writeByte(e.keyBytes.length);
+            out.writeByte(e.country.length() > 0 ? e.country.charAt(0) : ' ');
+            out.writeByte(e.country.length() > 1 ? e.country.charAt(1) : ' ');
+        }
+        for (int start : cellStarts) {
+            out.writeInt(start);
+        }
+        for (int entry : cellEntries) {
+            out.writeInt(entry);
+        }
+        pool.writeTo(out);
+        out.flush();
+    }
+
+    private static int intern(ByteArrayOutputStream pool, HashMap<String, Integer> pooled,
+                              byte[] bytes) {
+        String key = new String(bytes, UTF_8);
+        Integer offset = pooled.get(key);
+        if (offset == null) {
+            offset = pool.size();
+            pool.write(bytes, 0, bytes.length);
+            pooled.put(key, offset);
+        }
+        return offset;
+    }
+
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= 255) return bytes;
+        // Back off to a character boundary so the pool never holds half a UTF-8 sequence
+        int length = 255;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) length--;
+        byte[] truncated = new byte[length];
+        System.arraycopy(bytes, 0, truncated, 0, length);
+        return truncated;
+    }
+
+    /**
+     * The search form of a city name: accents stripped, lower case, and runs of anything that
+     * isn't a letter or digit collapsed into a single space, so an accented "Saint-Etienne" and
+     * "saint etienne" are the same key.
+     */
+    static String normalize(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.US)
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+    }
+
+    static int cellOf(double lat, double lon, int cellDegrees) {
+        final int cols = 360 / cellDegrees;
+        final int rows = 180 / cellDegrees;
+        int row = Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90) / cellDegrees)));
+        int col = Math.max(0, Math.min(cols - 1, (int) Math.floor((lon + 180) / cellDegrees)));
+        return row * cols + col;
+    }
+
+    static int compareBytes(byte[] lhs, byte[] rhs) {
+        int n = Math.min(lhs.length, rhs.length);
+        for (int i = 0; i < n; i++) {
+            int c = (lhs[i] & 0xFF) - (rhs[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        return lhs.length - rhs.length;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic in the default time zone without allocating: local days are counted as days
+ * since 1970-01-01 ("epoch days"), and the zone's offsets are looked up in a table of its
+ * transitions covering a couple of months either side of when it was built; instants outside
+ * that ask the zone directly.
+ *
+ * This replaces android.text.format.Time on the hot paths, which allocated a Time (and re-read
+ * the zone) for every date normalized.  The results are the same as the old
+ * Time.getJulianDay/setJulianDay code for every instant from 1970 on, except that a day whose
+ * midnight is skipped or repeated by a daylight saving change starts at its first instant.
+ *
+ * Call {@link #invalidate()} when the default time zone changes, and {@link #warmUp()} off the
+ * main thread to build the table before it's first needed.
+ */
+public final class DayMath {
+
+    public static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    // The table covers this far either side of the instant it was built around: the forecast,
+    // the days kept before it and a sync's worth of slack, for about 500 zone lookups
+    private static final long TABLE_SPAN = 62 * DAY_IN_MILLIS;
+    // No zone changes its offset twice within this, so sampling at it finds every transition
+    private static final long SAMPLE_STEP = 6L * 60 * 60 * 1000;
+
+    private static volatile Table sTable;
+
+    private static final class Table {
+        final TimeZone zone;
+        final long start;
+        final long end;
+        // offsets[i] is in effect from transitions[i - 1] (inclusive) to transitions[i]
+        final long[] transitions;
+        final int[] offsets;
+
+        Table(TimeZone zone, long center) {
+            this.zone = zone;
+            this.start = center - TABLE_SPAN;
+            this.end = center + TABLE_SPAN;
+
+            long[] transitions = new long[16];
+            int[] offsets = new int[17];
+            int count = 0;
+            int offset = zone.getOffset(start);
+            offsets[0] = offset;
+            for (long t = start; t < end; ) {
+                long next = Math.min(t + SAMPLE_STEP, end);
+                int nextOffset = zone.getOffset(next);
+                if (nextOffset != offset) {
+                    // The first millisecond in (t, next] with the new offset
+                    long lo = t;
+                    long hi = next;
+                    while (hi - lo > 1) {
+                        long mid = lo + (hi - lo) / 2;
+                        if (zone.getOffset(mid) == offset) lo = mid; else hi = mid;
+                    }
+                    if (count == transitions.length) {
+                        long[] grownTransitions = new long[count * 2];
+                        System.arraycopy(transitions, 0, grownTransitions, 0, count);
+                        transitions = grownTransitions;
+                        int[] grownOffsets = new int[count * 2 + 1];
+                        System.arraycopy(offsets, 0, grownOffsets, 0, count + 1);
+                        offsets = grownOffsets;
+                    }
+                    transitions[count++] = hi;
+                    offsets[count] = nextOffset;
+                    offset = nextOffset;
+                }
+                t = next;
+            }
+            this.transitions = new long[count];
+            System.arraycopy(transitions, 0, this.transitions, 0, count);
+            this.offsets = new int[count + 1];
+            System.arraycopy(offsets, 0, this.offsets, 0, count + 1);
+        }
+
+        int getOffset(long millis) {
+            if (millis < start || millis >= end) return zone.getOffset(millis);
+            // The number of transitions at or before millis is the index of its offset
+            int lo = 0;
+            int hi = transitions.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (transitions[mid] <= millis) lo = mid + 1; else hi = mid;
+            }
+            return offsets[lo];
+        }
+    }
+
+    private DayMath() {
+    }
+
+    private static Table getTable() {
+        Table table = sTable;
+        if (table == null) {
+            table = new Table(TimeZone.getDefault(), System.currentTimeMillis());
+            sTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Builds the table for the default time zone if it isn't built yet.  It takes a few hundred
+     * zone lookups, so call this from a background thread.
+     */
+    public static void warmUp() {
+        getTable();
+    }
+
+    /**
+     * Drops the cached zone, so the next call picks up the current default time zone.
+     */
+    public static void invalidate() {
+        sTable = null;
+    }
+
+    // For tests that need the table, rather than the fallback, to cover a particular period
+    static void rebuildAround(long centerMillis) {
+        sTable = new Table(TimeZone.getDefault(), centerMillis);
+    }
+
+    /**
+     * The default zone's offset from UTC at the given instant, daylight saving included.
+     */
+    public static int getOffset(long millis) {
+        return getTable().getOffset(millis);
+    }
+
+    /**
+     * The local day containing the given instant, as days since 1970-01-01.
+     */
+    public static long toEpochDay(long millis) {
+        return floorDiv(millis + getTable().getOffset(millis), DAY_IN_MILLIS);
+    }
+
+    /**
+     * The first instant of the given local day.
+     */
+    public static long startOfDay(long epochDay) {
+        final Table table = getTable();
+        final long local = epochDay * DAY_IN_MILLIS;
+        // Any instant whose wall clock reads local is within a day of it, and no zone changes
+        // offset more than once in that time
+        final int before = table.getOffset(local - DAY_IN_MILLIS);
+        final int after = table.getOffset(local + DAY_IN_MILLIS);
+        final long early = local - before;
+        final long late = local - after;
+        final boolean earlyValid = table.getOffset(early) == before;
+        final boolean lateValid = table.getOffset(late) == after;
+        if (earlyValid && lateValid) return Math.min(early, late);
+        if (earlyValid) return early;
+        if (lateValid) return late;
+
+        // Midnight fell into a gap, so the day starts with the transition that skipped it
+        long lo = Math.min(early, late);
+        long hi = Math.max(early, late);
+        while (hi - lo > 1) {
+            long mid = lo + (hi - lo) / 2;
+            if (table.getOffset(mid) == before) lo = mid; else hi = mid;
+        }
+        return hi;
+    }
+
+    /**
+     * The first instant of the local day containing the given instant; this is how the database
+     * stores dates.
+     */
+    public static long normalize(long millis) {
+        return startOfDay(toEpochDay(millis));
+    }
+
+    /**
+     * The number of local days from the day containing {@code fromMillis} to the one containing
+     * {@code toMillis}; 0 for the same day, 1 for the next and so on.
+     */
+    public static int daysBetween(long fromMillis, long toMillis) {
+        return (int) (toEpochDay(toMillis) - toEpochDay(fromMillis));
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) q--;
+        return q;
+    }
+}
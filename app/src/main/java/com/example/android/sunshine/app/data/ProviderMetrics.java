@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency and row counts for the WeatherProvider, per operation and uri match code, plus who
+ * is calling and a ring of recent slow operations.  Recording is a handful of atomic adds, so it
+ * stays on in every build; WeatherProvider hands out snapshots through call().
+ */
+class ProviderMetrics {
+
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_BULK_INSERT = 2;
+    static final int OP_UPDATE = 3;
+    static final int OP_DELETE = 4;
+    static final int OP_CALL = 5;
+    private static final int OP_COUNT = 6;
+    private static final String[] OP_NAMES =
+            {"query", "insert", "bulkInsert", "update", "delete", "call"};
+
+    // Anything slower than this is kept as a sample; reads get a frame, writes a bit more
+    static final long DEFAULT_SLOW_READ_NANOS = 16L * 1000 * 1000;
+    static final long DEFAULT_SLOW_WRITE_NANOS = 100L * 1000 * 1000;
+
+    // Bucket i counts operations that took less than 2^i microseconds (and at least 2^(i-1))
+    static final int HISTOGRAM_BUCKETS = 24;
+
+    private static final int SLOT_COUNT = 0;
+    private static final int SLOT_TOTAL_NANOS = 1;
+    private static final int SLOT_MAX_NANOS = 2;
+    private static final int SLOT_ROWS = 3;
+    private static final int SLOT_HISTOGRAM = 4;
+    private static final int SLOT_SIZE = SLOT_HISTOGRAM + HISTOGRAM_BUCKETS;
+
+    private static final int SAMPLE_CAPACITY = 32;
+    // Callers beyond this many are lumped together, so a misbehaving caller can't grow the map
+    private static final int MAX_CALLERS = 32;
+    private static final String OTHER_CALLERS = "other";
+
+    private final int[] mMatchCodes;
+    private final AtomicLongArray mStats;
+    private final ConcurrentHashMap<String, AtomicLong> mCallers = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Sample> mSamples =
+            new AtomicReferenceArray<>(SAMPLE_CAPACITY);
+    private final AtomicLong mNextSample = new AtomicLong();
+
+    private volatile long mSlowReadNanos = DEFAULT_SLOW_READ_NANOS;
+    private volatile long mSlowWriteNanos = DEFAULT_SLOW_WRITE_NANOS;
+
+    private static final class Sample {
+        final long wallTime;
+        final int op;
+        final int match;
+        final String uri;
+        final long elapsedNanos;
+        final int rows;
+        final String caller;
+        final String plan;
+
+        Sample(int op, int match, String uri, long elapsedNanos, int rows, String caller,
+               String plan) {
+            this.wallTime = System.currentTimeMillis();
+            this.op = op;
+            this.match = match;
+            this.uri = uri;
+            this.elapsedNanos = elapsedNanos;
+            this.rows = rows;
+            this.caller = caller;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * @param matchCodes the uri match codes worth telling apart; anything else (including
+     *                   call(), which has no uri) shares one extra slot per operation
+     */
+    ProviderMetrics(int[] matchCodes) {
+        mMatchCodes = matchCodes.clone();
+        mStats = new AtomicLongArray(OP_COUNT * (mMatchCodes.length + 1) * SLOT_SIZE);
+    }
+
+    private int slotOf(int op, int match) {
+        int index = mMatchCodes.length;
+        for (int i = 0; i < mMatchCodes.length; i++) {
+            if (mMatchCodes[i] == match) {
+                index = i;
+                break;
+            }
+        }
+        return (op * (mMatchCodes.length + 1) + index) * SLOT_SIZE;
+    }
+
+    /**
+     * Records one operation.  Returns true when it was slow enough that the caller should
+     * follow up with {@link #addSample}, once it has gathered whatever detail is worth keeping.
+     */
+    boolean record(int op, int match, long elapsedNanos, int rows, String caller) {
+        final int slot = slotOf(op, match);
+        mStats.incrementAndGet(slot + SLOT_COUNT);
+        mStats.addAndGet(slot + SLOT_TOTAL_NANOS, elapsedNanos);
+        mStats.addAndGet(slot + SLOT_ROWS, Math.max(0, rows));
+        long max;
+        do {
+            max = mStats.get(slot + SLOT_MAX_NANOS);
+        } while (elapsedNanos > max
+                && !mStats.compareAndSet(slot + SLOT_MAX_NANOS, max, elapsedNanos));
+        mStats.incrementAndGet(slot + SLOT_HISTOGRAM + bucketOf(elapsedNanos));
+
+        AtomicLong calls = mCallers.get(caller);
+        if (calls == null) {
+            if (mCallers.size() >= MAX_CALLERS) caller = OTHER_CALLERS;
+            AtomicLong fresh = new AtomicLong();
+            calls = mCallers.putIfAbsent(caller, fresh);
+            if (calls == null) calls = fresh;
+        }
+        calls.incrementAndGet();
+
+        return elapsedNanos >= (op == OP_QUERY || op == OP_CALL ? mSlowReadNanos : mSlowWriteNanos);
+    }
+
+    void addSample(int op, int match, String uri, long elapsedNanos, int rows, String caller,
+                   String plan) {
+        int index = (int) (mNextSample.getAndIncrement() % SAMPLE_CAPACITY);
+        mSamples.set(index, new Sample(op, match, uri, elapsedNanos, rows, caller, plan));
+    }
+
+    static int bucketOf(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    void setSlowThresholds(long readNanos, long writeNanos) {
+        mSlowReadNanos = readNanos;
+        mSlowWriteNanos = writeNanos;
+    }
+
+    void reset() {
+        for (int i = 0; i < mStats.length(); i++) {
+            mStats.set(i, 0);
+        }
+        mCallers.clear();
+        for (int i = 0; i < SAMPLE_CAPACITY; i++) {
+            mSamples.set(i, null);
+        }
+        mNextSample.set(0);
+    }
+
+    /**
+     * A snapshot of everything recorded so far, laid out as described in
+     * {@link WeatherContract.MetricsEntry}.
+     */
+    Bundle dump() {
+        StringBuilder report = new StringBuilder();
+        ArrayList<Bundle> operations = new ArrayList<>();
+        for (int op = 0; op < OP_COUNT; op++) {
+            for (int i = 0; i <= mMatchCodes.length; i++) {
+                int match = i < mMatchCodes.length ? mMatchCodes[i] : -1;
+                int slot = slotOf(op, match);
+                long count = mStats.get(slot + SLOT_COUNT);
+                if (count == 0) continue;
+
+                long[] histogram = new long[HISTOGRAM_BUCKETS];
+                for (int b = 0; b < HISTOGRAM_BUCKETS; b++) {
+                    histogram[b] = mStats.get(slot + SLOT_HISTOGRAM + b);
+                }
+                Bundle stats = new Bundle();
+                stats.putString(WeatherContract.MetricsEntry.KEY_OPERATION, OP_NAMES[op]);
+                stats.putInt(WeatherContract.MetricsEntry.KEY_MATCH, match);
+                stats.putLong(WeatherContract.MetricsEntry.KEY_COUNT, count);
+                stats.putLong(WeatherContract.MetricsEntry.KEY_TOTAL_NANOS,
+                        mStats.get(slot + SLOT_TOTAL_NANOS));
+                stats.putLong(WeatherContract.MetricsEntry.KEY_MAX_NANOS,
+                        mStats.get(slot + SLOT_MAX_NANOS));
+                stats.putLong(WeatherContract.MetricsEntry.KEY_ROWS, mStats.get(slot + SLOT_ROWS));
+                stats.putLongArray(WeatherContract.MetricsEntry.KEY_HISTOGRAM, histogram);
+                operations.add(stats);
+
+                report.append(String.format(Locale.US,
+                        "%-10s %4d  n=%-6d avg=%.2fms max=%.2fms p50<%s p99<%s rows=%d%n",
+                        OP_NAMES[op], match, count,
+                        mStats.get(slot + SLOT_TOTAL_NANOS) / 1e6 / count,
+                        mStats.get(slot + SLOT_MAX_NANOS) / 1e6,
+                        percentile(histogram, count, 0.5), percentile(histogram, count, 0.99),
+                        mStats.get(slot + SLOT_ROWS)));
+            }
+        }
+
+        Bundle callers = new Bundle();
+        report.append("\ncallers\n");
+        for (Map.Entry<String, AtomicLong> caller : mCallers.entrySet()) {
+            callers.putLong(caller.getKey(), caller.getValue().get());
+            report.append("  ").append(caller.getKey()).append(": ")
+                    .append(caller.getValue().get()).append('\n');
+        }
+
+        ArrayList<Bundle> samples = new ArrayList<>();
+        report.append("\nslow\n");
+        long next = mNextSample.get();
+        // Newest first
+        for (long n = next - 1; n >= 0 && n >= next - SAMPLE_CAPACITY; n--) {
+            Sample sample = mSamples.get((int) (n % SAMPLE_CAPACITY));
+            if (sample == null) continue;
+            Bundle b = new Bundle();
+            b.putLong(WeatherContract.MetricsEntry.KEY_TIME, sample.wallTime);
+            b.putString(WeatherContract.MetricsEntry.KEY_OPERATION, OP_NAMES[sample.op]);
+            b.putInt(WeatherContract.MetricsEntry.KEY_MATCH, sample.match);
+            b.putString(WeatherContract.MetricsEntry.KEY_URI, sample.uri);
+            b.putLong(WeatherContract.MetricsEntry.KEY_ELAPSED_NANOS, sample.elapsedNanos);
+            b.putLong(WeatherContract.MetricsEntry.KEY_ROWS, sample.rows);
+            b.putString(WeatherContract.MetricsEntry.KEY_CALLER, sample.caller);
+            b.putString(WeatherContract.MetricsEntry.KEY_PLAN, sample.plan);
+            samples.add(b);
+
+            report.append(String.format(Locale.US, "  %s %.2fms rows=%d %s by %s%n",
+                    OP_NAMES[sample.op], sample.elapsedNanos / 1e6, sample.rows, sample.uri,
+                    sample.caller));
+            if (sample.plan != null) {
+                report.append("    ").append(sample.plan.replace("\n", "\n    ")).append('\n');
+            }
+        }
+
+        Bundle result = new Bundle();
+        result.putParcelableArrayList(WeatherContract.MetricsEntry.KEY_OPERATIONS, operations);
+        result.putBundle(WeatherContract.MetricsEntry.KEY_CALLERS, callers);
+        result.putParcelableArrayList(WeatherContract.MetricsEntry.KEY_SLOW_SAMPLES, samples);
+        result.putString(WeatherContract.MetricsEntry.KEY_REPORT, report.toString());
+        return result;
+    }
+
+    // Upper bound of the bucket holding the given fraction of the operations
+    private static String percentile(long[] histogram, long count, double fraction) {
+        long seen = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            seen += histogram[b];
+            if (seen >= Math.ceil(count * fraction)) {
+                long micros = 1L << b;
+                return micros >= 1000 ? (micros / 1000) + "ms" : micros + "us";
+            }
+        }
+        return "?";
+    }
+}
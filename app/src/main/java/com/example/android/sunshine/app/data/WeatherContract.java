@@ -19,7 +19,6 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +42,14 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_AGGREGATE = "aggregate";
+    public static final String PATH_SEARCH = "search";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the local day.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        // This runs for every row written and every dated uri built, so it has to be cheap
+        return DayMath.normalize(startDate);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,9 +79,24 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Full text index over the location setting and city name, used for search
+        public static final String FTS_TABLE_NAME = "location_fts";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /*
+            Matches every known location where each word of the query is a prefix of a word in
+            either the location setting or the city name, e.g. "moun" finds "Mountain View".
+         */
+        public static Uri buildLocationSearchUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
+        }
+
+        public static String getSearchQueryFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -99,6 +112,11 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        // Query parameters for paging, see withLimit and withAfterDate
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_OFFSET = "offset";
+        public static final String PARAM_AFTER_DATE = "after_date";
+
         // Column with the foreign key into the location table.
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date, stored as long in milliseconds since the epoch
@@ -144,6 +162,28 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /*
+            Paging for the weather uris.  A limit and offset page by position.  An after date
+            instead continues strictly after the last date of the previous page, which is
+            cheaper for deep pages and doesn't skip or repeat rows when the table changes in
+            between.  Both assume rows sorted by date ascending.
+         */
+        public static Uri withLimit(Uri uri, int limit) {
+            return uri.buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static Uri withLimitAndOffset(Uri uri, int limit, int offset) {
+            return uri.buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit))
+                    .appendQueryParameter(PARAM_OFFSET, Integer.toString(offset)).build();
+        }
+
+        public static Uri withAfterDate(Uri uri, long date) {
+            return uri.buildUpon()
+                    .appendQueryParameter(PARAM_AFTER_DATE, Long.toString(date)).build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
@@ -164,5 +204,178 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        /*
+            The paging parameters as an SQLiteQueryBuilder limit clause ("offset,limit"), or null
+            when the uri isn't paged.
+         */
+        public static String getLimitFromUri(Uri uri) {
+            String limit = uri.getQueryParameter(PARAM_LIMIT);
+            String offset = uri.getQueryParameter(PARAM_OFFSET);
+            if ((null == limit || limit.length() == 0) && (null == offset || offset.length() == 0))
+                return null;
+            // SQLite needs a LIMIT to go with an OFFSET, so an offset alone means "the rest"
+            int rows = (null == limit || limit.length() == 0)
+                    ? Integer.MAX_VALUE : Integer.parseInt(limit);
+            int skip = (null == offset || offset.length() == 0) ? 0 : Integer.parseInt(offset);
+            if (rows < 0 || skip < 0)
+                throw new IllegalArgumentException("Invalid paging in uri: " + uri);
+            return skip + "," + rows;
+        }
+    }
+
+    /* Inner class that defines the columns returned by the weather aggregate queries */
+    public static final class AggregateEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_AGGREGATE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATE;
+
+        // Query parameters.  The start of the range reuses WeatherEntry.COLUMN_DATE, just like
+        // buildWeatherLocationWithStartDate, and both ends of the range are inclusive.
+        public static final String PARAM_END_DATE = "end_date";
+        public static final String PARAM_GROUP_BY_CONDITION = "group_by_condition";
+
+        // Condition class of the weather id, i.e. weather_id / 100 (2 = storm, 5 = rain, 8 = clouds
+        // or clear ...).  NULL unless grouping by condition.
+        public static final String COLUMN_CONDITION_CLASS = "condition_class";
+
+        // Number of days in the range (or in the condition class)
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // First and last day actually present in the range
+        public static final String COLUMN_FIRST_DATE = "first_date";
+        public static final String COLUMN_LAST_DATE = "last_date";
+
+        // Lowest minimum and highest maximum temperature, plus the averages of both
+        public static final String COLUMN_MIN_TEMP = "min_temp";
+        public static final String COLUMN_MAX_TEMP = "max_temp";
+        public static final String COLUMN_AVG_MIN_TEMP = "avg_min_temp";
+        public static final String COLUMN_AVG_MAX_TEMP = "avg_max_temp";
+
+        public static final String COLUMN_MAX_WIND_SPEED = "max_wind";
+        public static final String COLUMN_AVG_WIND_SPEED = "avg_wind";
+        public static final String COLUMN_AVG_HUMIDITY = "avg_humidity";
+        public static final String COLUMN_AVG_PRESSURE = "avg_pressure";
+
+        public static Uri buildAggregateUri(String locationSetting, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(WeatherEntry.COLUMN_DATE,
+                            Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        public static Uri buildAggregateByConditionUri(
+                String locationSetting, long startDate, long endDate) {
+            return buildAggregateUri(locationSetting, startDate, endDate).buildUpon()
+                    .appendQueryParameter(PARAM_GROUP_BY_CONDITION, Boolean.toString(true))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            return WeatherEntry.getStartDateFromUri(uri);
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return Long.MAX_VALUE;
+        }
+
+        public static boolean isGroupedByCondition(Uri uri) {
+            return Boolean.parseBoolean(uri.getQueryParameter(PARAM_GROUP_BY_CONDITION));
+        }
+    }
+
+    /*
+        Methods for ContentResolver.call() that return today's forecast, or the next few days,
+        as a small Bundle of primitives.  They are for consumers that only want a row or two
+        and would otherwise pay for a Cursor and its window.  The arg is the location setting.
+     */
+    public static final class SummaryEntry {
+
+        // Bundle with the first day on or after EXTRA_START_DATE, or null if there is none
+        public static final String METHOD_GET_TODAY = "get_today";
+        // Bundle of parallel arrays with up to EXTRA_DAY_COUNT days from EXTRA_START_DATE on
+        public static final String METHOD_GET_DAYS = "get_days";
+
+        // Optional extras; the start date defaults to now and the day count to a week
+        public static final String EXTRA_START_DATE = "start_date";
+        public static final String EXTRA_DAY_COUNT = "day_count";
+
+        // Keys of the METHOD_GET_TODAY result
+        public static final String KEY_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String KEY_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String KEY_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+        public static final String KEY_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String KEY_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+
+        // Keys of the METHOD_GET_DAYS result, all arrays of the same length
+        public static final String KEY_DATES = "dates";
+        public static final String KEY_WEATHER_IDS = "weather_ids";
+        public static final String KEY_SHORT_DESCS = "short_descs";
+        public static final String KEY_MAX_TEMPS = "max_temps";
+        public static final String KEY_MIN_TEMPS = "min_temps";
+
+        public static final int DEFAULT_DAY_COUNT = 7;
+    }
+
+    /*
+        Methods for ContentResolver.call() that expose the provider's own latency figures: per
+        operation and uri match code counts, timings, a log2 microsecond histogram and rows, the
+        callers seen, and recent slow operations with their query plans.  Meant for tests and
+        the debug build's metrics screen.
+     */
+    public static final class MetricsEntry {
+
+        // Bundle snapshot of everything recorded since the provider started or was last reset
+        public static final String METHOD_DUMP_METRICS = "dump_metrics";
+        // Clears everything, and sets the slow operation thresholds from the extras (or back to
+        // their defaults when they aren't given)
+        public static final String METHOD_RESET_METRICS = "reset_metrics";
+
+        // Optional METHOD_RESET_METRICS extras, in nanoseconds
+        public static final String EXTRA_SLOW_READ_NANOS = "slow_read_nanos";
+        public static final String EXTRA_SLOW_WRITE_NANOS = "slow_write_nanos";
+
+        // Keys of the METHOD_DUMP_METRICS result: a list of per operation Bundles, a Bundle of
+        // call counts by caller, a list of slow sample Bundles (newest first) and the whole lot
+        // as readable text
+        public static final String KEY_OPERATIONS = "operations";
+        public static final String KEY_CALLERS = "callers";
+        public static final String KEY_SLOW_SAMPLES = "slow_samples";
+        public static final String KEY_REPORT = "report";
+
+        // Keys of the operation and slow sample Bundles
+        public static final String KEY_OPERATION = "operation";
+        public static final String KEY_MATCH = "match";
+        public static final String KEY_COUNT = "count";
+        public static final String KEY_TOTAL_NANOS = "total_nanos";
+        public static final String KEY_MAX_NANOS = "max_nanos";
+        public static final String KEY_ROWS = "rows";
+        // long[]; bucket i counts operations under 2^i microseconds
+        public static final String KEY_HISTOGRAM = "histogram";
+        public static final String KEY_TIME = "time";
+        public static final String KEY_URI = "uri";
+        public static final String KEY_ELAPSED_NANOS = "elapsed_nanos";
+        public static final String KEY_CALLER = "caller";
+        public static final String KEY_PLAN = "plan";
     }
 }
@@ -28,7 +28,7 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
@@ -59,28 +59,67 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 // the ID of the location entry associated with this weather data
                 WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
 
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                // Measurements are kept in hundredths, and the description is looked up by
+                // weather id; see WeatherEncoding, and the view below that decodes them
+                WeatherEncoding.COLUMN_MIN_CENTI + " INTEGER NOT NULL, " +
+                WeatherEncoding.COLUMN_MAX_CENTI + " INTEGER NOT NULL, " +
 
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                WeatherEncoding.COLUMN_HUMIDITY_CENTI + " INTEGER NOT NULL, " +
+                WeatherEncoding.COLUMN_PRESSURE_CENTI + " INTEGER NOT NULL, " +
+                WeatherEncoding.COLUMN_WIND_CENTI + " INTEGER NOT NULL, " +
+                WeatherEncoding.COLUMN_DEGREES_CENTI + " INTEGER NOT NULL, " +
 
                 // Set up the location column as a foreign key to location table.
                 " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
                 LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
 
                 // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+                // per location, it's created a UNIQUE constraint with REPLACE strategy.
+                // The location comes first so that the index backing the constraint also
+                // serves every "location_id = ? AND date BETWEEN ..." range scan.
+                " UNIQUE (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        final String SQL_CREATE_CONDITION_TABLE = "CREATE TABLE " +
+                WeatherEncoding.CONDITION_TABLE_NAME + " (" +
+                WeatherEncoding.COLUMN_CONDITION_ID + " INTEGER PRIMARY KEY, " +
+                WeatherEncoding.COLUMN_CONDITION_DESC + " TEXT NOT NULL);";
+
+        // Full text index over the location table, so the location picker can suggest places
+        // we already know about as the user types.  It is an external content table: the text
+        // lives only in the location table and the triggers below keep the index in step.
+        final String SQL_CREATE_LOCATION_FTS_TABLE = "CREATE VIRTUAL TABLE " +
+                LocationEntry.FTS_TABLE_NAME + " USING fts4(" +
+                "content=\"" + LocationEntry.TABLE_NAME + "\", " +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_CITY_NAME + ", " +
+                // Extra prefix indexes make the short as-you-type queries cheap
+                "prefix=\"1,2,3\");";
+
+        final String ftsColumns = LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_CITY_NAME;
+        final String ftsInsert = "INSERT INTO " + LocationEntry.FTS_TABLE_NAME +
+                "(docid, " + ftsColumns + ") VALUES (new." + LocationEntry._ID + ", new." +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", new." + LocationEntry.COLUMN_CITY_NAME +
+                "); ";
+        final String ftsDelete = "DELETE FROM " + LocationEntry.FTS_TABLE_NAME +
+                " WHERE docid = old." + LocationEntry._ID + "; ";
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_CONDITION_TABLE);
+        sqLiteDatabase.execSQL(WeatherEncoding.getCreateViewSql());
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_FTS_TABLE);
+        sqLiteDatabase.execSQL("CREATE TRIGGER location_fts_after_insert AFTER INSERT ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " + ftsInsert + "END;");
+        sqLiteDatabase.execSQL("CREATE TRIGGER location_fts_before_update BEFORE UPDATE ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " + ftsDelete + "END;");
+        sqLiteDatabase.execSQL("CREATE TRIGGER location_fts_after_update AFTER UPDATE ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " + ftsInsert + "END;");
+        sqLiteDatabase.execSQL("CREATE TRIGGER location_fts_before_delete BEFORE DELETE ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " + ftsDelete + "END;");
     }
 
     @Override
@@ -91,8 +130,11 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // It does NOT depend on the version number for your application.
         // If you want to update the schema without wiping data, commenting out the next 2 lines
         // should be your top priority before modifying this method.
+        sqLiteDatabase.execSQL("DROP VIEW IF EXISTS " + WeatherEncoding.VIEW_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.FTS_TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEncoding.CONDITION_TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
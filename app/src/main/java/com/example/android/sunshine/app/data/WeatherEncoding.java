@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How weather rows are laid out on disk.  The measurements are stored as integers in hundredths
+ * (a temperature of 21.5 is 2150), which SQLite packs into two or three bytes instead of an
+ * eight byte REAL, and the description lives once per weather id in a lookup table instead of
+ * once per row.  The weather view decodes both back into the columns WeatherContract promises,
+ * so everything reading weather goes through the view and everything writing goes through here.
+ */
+final class WeatherEncoding {
+
+    private static final String LOG_TAG = WeatherEncoding.class.getSimpleName();
+
+    static final int SCALE = 100;
+
+    // The weather table's stored measurement columns, in hundredths
+    static final String COLUMN_MIN_CENTI = "min_centi";
+    static final String COLUMN_MAX_CENTI = "max_centi";
+    static final String COLUMN_HUMIDITY_CENTI = "humidity_centi";
+    static final String COLUMN_PRESSURE_CENTI = "pressure_centi";
+    static final String COLUMN_WIND_CENTI = "wind_centi";
+    static final String COLUMN_DEGREES_CENTI = "degrees_centi";
+
+    // Contract columns and the stored columns they decode from, in the same order
+    private static final String[] DECODED_COLUMNS = {
+            WeatherEntry.COLUMN_MIN_TEMP, WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY, WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED, WeatherEntry.COLUMN_DEGREES};
+    private static final String[] ENCODED_COLUMNS = {
+            COLUMN_MIN_CENTI, COLUMN_MAX_CENTI,
+            COLUMN_HUMIDITY_CENTI, COLUMN_PRESSURE_CENTI,
+            COLUMN_WIND_CENTI, COLUMN_DEGREES_CENTI};
+
+    // Descriptions by weather id.  The column names are distinct from the weather table's so
+    // that neither needs qualifying once they're joined.
+    static final String CONDITION_TABLE_NAME = "weather_condition";
+    static final String COLUMN_CONDITION_ID = "condition_id";
+    static final String COLUMN_CONDITION_DESC = "condition_desc";
+
+    // Reads like the weather table used to, one column per WeatherEntry column
+    static final String VIEW_NAME = "weather_view";
+
+    // What queries put in their FROM clause; aliased so "weather.column" keeps working
+    static final String VIEW_AS_TABLE = VIEW_NAME + " AS " + WeatherEntry.TABLE_NAME;
+
+    private WeatherEncoding() {
+    }
+
+    /*
+        The expression decoding a stored column, e.g. "min_centi / 100.0", for queries that read
+        the weather table itself (like the aggregates, which are cheaper over the raw integers).
+     */
+    static String decode(String storedColumn) {
+        return storedColumn + " / " + SCALE + ".0";
+    }
+
+    static String getCreateViewSql() {
+        StringBuilder sql = new StringBuilder("CREATE VIEW ").append(VIEW_NAME)
+                .append(" AS SELECT ")
+                .append(WeatherEntry.TABLE_NAME).append('.').append(WeatherEntry._ID)
+                .append(" AS ").append(WeatherEntry._ID).append(", ")
+                .append(WeatherEntry.COLUMN_LOC_KEY).append(", ")
+                .append(WeatherEntry.COLUMN_DATE).append(", ")
+                .append(COLUMN_CONDITION_DESC).append(" AS ")
+                .append(WeatherEntry.COLUMN_SHORT_DESC).append(", ")
+                .append(WeatherEntry.COLUMN_WEATHER_ID);
+        for (int i = 0; i < DECODED_COLUMNS.length; i++) {
+            sql.append(", ").append(decode(ENCODED_COLUMNS[i]))
+                    .append(" AS ").append(DECODED_COLUMNS[i]);
+        }
+        //... FROM weather LEFT JOIN weather_condition ON weather_id = condition_id
+        return sql.append(" FROM ").append(WeatherEntry.TABLE_NAME)
+                .append(" LEFT JOIN ").append(CONDITION_TABLE_NAME)
+                .append(" ON ").append(WeatherEntry.COLUMN_WEATHER_ID)
+                .append(" = ").append(COLUMN_CONDITION_ID)
+                .toString();
+    }
+
+    static long encode(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    /**
+     * A copy of the given values in the weather table's stored form: measurements scaled and
+     * renamed, and the description dropped (see {@link #putCondition}).  Anything else is
+     * passed through, so an unknown column still fails the way it always did.
+     */
+    static ContentValues encode(ContentValues values) {
+        ContentValues encoded = new ContentValues(values);
+        encoded.remove(WeatherEntry.COLUMN_SHORT_DESC);
+        for (int i = 0; i < DECODED_COLUMNS.length; i++) {
+            if (!values.containsKey(DECODED_COLUMNS[i])) continue;
+            encoded.remove(DECODED_COLUMNS[i]);
+            Double value = values.getAsDouble(DECODED_COLUMNS[i]);
+            if (value == null) {
+                encoded.putNull(ENCODED_COLUMNS[i]);
+            } else {
+                encoded.put(ENCODED_COLUMNS[i], encode(value));
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Records the description carried by the given values against their weather id, unless
+     * {@code written} shows it was already recorded during this batch.  Values without both
+     * leave the lookup table alone.
+     */
+    static void putCondition(SQLiteDatabase db, ContentValues values,
+                             Map<Integer, String> written) {
+        Integer weatherId = values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+        String description = values.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        if (weatherId == null || description == null) return;
+        if (written != null) {
+            if (description.equals(written.get(weatherId))) return;
+            written.put(weatherId, description);
+        }
+        ContentValues condition = new ContentValues(2);
+        condition.put(COLUMN_CONDITION_ID, weatherId);
+        condition.put(COLUMN_CONDITION_DESC, description);
+        db.insertWithOnConflict(CONDITION_TABLE_NAME, null, condition,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Inserts a row given in WeatherContract's columns, returning its id or -1 like
+     * SQLiteDatabase.insert.  A row without a description is refused, as the weather table's
+     * NOT NULL constraint on it used to.
+     */
+    static long insertWeather(SQLiteDatabase db, ContentValues values,
+                              Map<Integer, String> written) {
+        if (values.getAsString(WeatherEntry.COLUMN_SHORT_DESC) == null) {
+            Log.e(LOG_TAG, "Refusing weather without " + WeatherEntry.COLUMN_SHORT_DESC);
+            return -1;
+        }
+        putCondition(db, values, written);
+        return db.insert(WeatherEntry.TABLE_NAME, null, encode(values));
+    }
+
+    /**
+     * A selection of weather table rows for update and delete, from one written against the
+     * view's (that is, WeatherContract's) columns.  The weather table doesn't store the
+     * description or the decoded measurements, so the selection is evaluated over the view.
+     */
+    static String selectStoredRows(String selection) {
+        if (selection == null) return null;
+        //_id IN (SELECT _id FROM weather_view AS weather WHERE (<selection>))
+        return WeatherEntry._ID + " IN (SELECT " + WeatherEntry._ID + " FROM " + VIEW_AS_TABLE
+                + " WHERE (" + selection + "))";
+    }
+
+    /**
+     * Updates the rows the selection (in WeatherContract's columns) picks out with values given
+     * in WeatherContract's columns, returning how many rows it matched.  A new description is
+     * recorded against the weather id being written or, without one, against the matched rows'
+     * weather ids, and only if a row matched.  Call within a transaction, so the rows and their
+     * descriptions change together.
+     */
+    static int updateWeather(SQLiteDatabase db, ContentValues values, String selection,
+                             String[] selectionArgs) {
+        final String where = selectStoredRows(selection);
+        final String description = values.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        // Read before the update, which may change what the selection matches
+        List<Integer> matchedIds = null;
+        if (description != null && !values.containsKey(WeatherEntry.COLUMN_WEATHER_ID)) {
+            matchedIds = getWeatherIds(db, where, selectionArgs);
+        }
+
+        ContentValues encoded = encode(values);
+        int rowsUpdated;
+        if (encoded.size() > 0) {
+            rowsUpdated = db.update(WeatherEntry.TABLE_NAME, encoded, where, selectionArgs);
+        } else {
+            // Only the description, which the weather table doesn't hold
+            rowsUpdated = (int) DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME,
+                    where, selectionArgs);
+        }
+        if (rowsUpdated == 0 || description == null) return rowsUpdated;
+
+        if (matchedIds == null) {
+            putCondition(db, values, null);
+        } else {
+            ContentValues condition = new ContentValues(2);
+            for (int weatherId : matchedIds) {
+                condition.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+                condition.put(WeatherEntry.COLUMN_SHORT_DESC, description);
+                putCondition(db, condition, null);
+            }
+        }
+        return rowsUpdated;
+    }
+
+    //SELECT DISTINCT weather_id FROM weather WHERE <where>
+    private static List<Integer> getWeatherIds(SQLiteDatabase db, String where,
+                                               String[] selectionArgs) {
+        Cursor cursor = db.query(true, WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_WEATHER_ID}, where, selectionArgs,
+                null, null, null, null);
+        try {
+            List<Integer> weatherIds = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                weatherIds.add(cursor.getInt(0));
+            }
+            return weatherIds;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -19,10 +19,21 @@ import android.annotation.TargetApi;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
+import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Process;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -30,10 +41,43 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Compiled once and reused by call(); guarded by its own monitor since it holds bindings
+    private SQLiteStatement mLocationIdStatement;
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_SEARCH = 301;
+    static final int AGGREGATE_WITH_LOCATION = 400;
+
+    private final ProviderMetrics mMetrics = new ProviderMetrics(new int[]{
+            WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
+            LOCATION, LOCATION_SEARCH, AGGREGATE_WITH_LOCATION});
+
+    // Package names by uid, for labelling callers from other processes
+    private final ConcurrentHashMap<Integer, String> mCallerNames = new ConcurrentHashMap<>();
+
+    // Pool numbers at the end of a thread name, e.g. " #3" or "-12"
+    private static final Pattern sThreadNumberPattern = Pattern.compile("\\s*[-#]?\\d+$");
+
+    // Each of our threads' label and the name it was worked out from, which is only looked at
+    // again if the thread has been renamed since
+    private static final ThreadLocal<String[]> sThreadLabels = new ThreadLocal<>();
+
+    /*
+        The SQL and arguments for a query, built up front so that query() can time running it
+        and, when it turns out slow, ask SQLite how it planned it.
+     */
+    private static final class SqlQuery {
+        final String sql;
+        final String[] args;
+
+        SqlQuery(String sql, String[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -41,9 +85,9 @@ public class WeatherProvider extends ContentProvider {
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
         
         //This is an inner join which looks like
-        //weather INNER JOIN location ON weather.location_id = location._id
+        //weather_view AS weather INNER JOIN location ON weather.location_id = location._id
         sWeatherByLocationSettingQueryBuilder.setTables(
-                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                WeatherEncoding.VIEW_AS_TABLE + " INNER JOIN " +
                         WeatherContract.LocationEntry.TABLE_NAME +
                         " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
@@ -51,6 +95,99 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    private static final SQLiteQueryBuilder sWeatherAggregateQueryBuilder;
+    private static final SQLiteQueryBuilder sWeatherAggregateByConditionQueryBuilder;
+
+    static{
+        sWeatherAggregateQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherAggregateByConditionQueryBuilder = new SQLiteQueryBuilder();
+
+        // The aggregates only ever read the weather table; the location is resolved with a
+        // sub-select so SQLite can walk the (location_id, date) index instead of joining.  They
+        // work on the stored integers and only decode the result.
+        sWeatherAggregateQueryBuilder.setTables(WeatherContract.WeatherEntry.TABLE_NAME);
+        sWeatherAggregateByConditionQueryBuilder.setTables(
+                WeatherContract.WeatherEntry.TABLE_NAME);
+
+        final HashMap<String, String> columns = new HashMap<>();
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_DAY_COUNT, "COUNT(*)");
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_FIRST_DATE,
+                "MIN(" + WeatherContract.WeatherEntry.COLUMN_DATE + ")");
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_LAST_DATE,
+                "MAX(" + WeatherContract.WeatherEntry.COLUMN_DATE + ")");
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_MIN_TEMP,
+                WeatherEncoding.decode("MIN(" + WeatherEncoding.COLUMN_MIN_CENTI + ")"));
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_MAX_TEMP,
+                WeatherEncoding.decode("MAX(" + WeatherEncoding.COLUMN_MAX_CENTI + ")"));
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_AVG_MIN_TEMP,
+                WeatherEncoding.decode("AVG(" + WeatherEncoding.COLUMN_MIN_CENTI + ")"));
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_AVG_MAX_TEMP,
+                WeatherEncoding.decode("AVG(" + WeatherEncoding.COLUMN_MAX_CENTI + ")"));
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_MAX_WIND_SPEED,
+                WeatherEncoding.decode("MAX(" + WeatherEncoding.COLUMN_WIND_CENTI + ")"));
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_AVG_WIND_SPEED,
+                WeatherEncoding.decode("AVG(" + WeatherEncoding.COLUMN_WIND_CENTI + ")"));
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_AVG_HUMIDITY,
+                WeatherEncoding.decode("AVG(" + WeatherEncoding.COLUMN_HUMIDITY_CENTI + ")"));
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_AVG_PRESSURE,
+                WeatherEncoding.decode("AVG(" + WeatherEncoding.COLUMN_PRESSURE_CENTI + ")"));
+
+        // The condition class is only a value of the group when grouping by it; ungrouped, a bare
+        // column would be taken from whichever row SQLite happened to visit, so it's NULL instead
+        final HashMap<String, String> byCondition = new HashMap<>(columns);
+        putAggregate(byCondition, WeatherContract.AggregateEntry.COLUMN_CONDITION_CLASS,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " / 100");
+        sWeatherAggregateByConditionQueryBuilder.setProjectionMap(byCondition);
+        putAggregate(columns, WeatherContract.AggregateEntry.COLUMN_CONDITION_CLASS, "NULL");
+        sWeatherAggregateQueryBuilder.setProjectionMap(columns);
+    }
+
+    private static void putAggregate(HashMap<String, String> columns, String name, String expr) {
+        columns.put(name, expr + " AS " + name);
+    }
+
+    private static final SQLiteQueryBuilder sLocationSearchQueryBuilder;
+
+    // Suggestions are only ever shown a handful at a time
+    private static final String LOCATION_SEARCH_LIMIT = "10";
+
+    static{
+        sLocationSearchQueryBuilder = new SQLiteQueryBuilder();
+
+        //location INNER JOIN location_fts ON location._id = location_fts.docid
+        sLocationSearchQueryBuilder.setTables(
+                WeatherContract.LocationEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.FTS_TABLE_NAME +
+                        " ON " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID +
+                        " = " + WeatherContract.LocationEntry.FTS_TABLE_NAME + ".docid");
+
+        // Both tables have location_setting and city_name, so qualify everything
+        final HashMap<String, String> columns = new HashMap<>();
+        for (String column : new String[]{
+                WeatherContract.LocationEntry._ID,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG}) {
+            columns.put(column, WeatherContract.LocationEntry.TABLE_NAME + "." + column +
+                    " AS " + column);
+        }
+        sLocationSearchQueryBuilder.setProjectionMap(columns);
+    }
+
+    //location_fts MATCH ?
+    private static final String sLocationSearchSelection =
+            WeatherContract.LocationEntry.FTS_TABLE_NAME + " MATCH ? ";
+
+    //location_id = (SELECT _id FROM location WHERE location_setting = ?) AND date BETWEEN ? AND ?
+    private static final String sAggregateSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = (SELECT " +
+                    WeatherContract.LocationEntry._ID + " FROM " +
+                    WeatherContract.LocationEntry.TABLE_NAME + " WHERE " +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?) AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ? ";
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -62,15 +199,20 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
+    //... AND date > ?
+    private static final String sAfterDateSelection =
+            "AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
     //location.location_setting = ? AND date = ?
     private static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+    private SqlQuery getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
 
         String[] selectionArgs;
         String selection;
@@ -83,29 +225,256 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        if (afterDate != 0) {
+            selection = selection + sAfterDateSelection;
+            selectionArgs = appendArg(selectionArgs, Long.toString(afterDate));
+        }
+
+        return new SqlQuery(sWeatherByLocationSettingQueryBuilder.buildQuery(
+                projection,
+                selection,
+                null,
+                null,
+                sortOrder,
+                WeatherContract.WeatherEntry.getLimitFromUri(uri)
+        ), selectionArgs);
+    }
+
+    // The whole weather table, narrowed by the caller's selection and paged like the rest
+    private SqlQuery getWeather(Uri uri, String[] projection, String selection,
+                                String[] selectionArgs, String sortOrder) {
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        if (afterDate != 0) {
+            //(<selection>) AND date > ?
+            String afterDateSelection = WeatherContract.WeatherEntry.COLUMN_DATE + " > ?";
+            selection = selection == null || selection.trim().length() == 0
+                    ? afterDateSelection : "(" + selection + ") AND " + afterDateSelection;
+            selectionArgs = appendArg(selectionArgs, Long.toString(afterDate));
+        }
+
+        return new SqlQuery(SQLiteQueryBuilder.buildQueryString(false,
+                WeatherEncoding.VIEW_AS_TABLE,
                 projection,
                 selection,
-                selectionArgs,
                 null,
                 null,
-                sortOrder
-        );
+                sortOrder,
+                WeatherContract.WeatherEntry.getLimitFromUri(uri)
+        ), selectionArgs);
+    }
+
+    private static String[] appendArg(String[] selectionArgs, String arg) {
+        if (selectionArgs == null) return new String[]{arg};
+        String[] args = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+        args[selectionArgs.length] = arg;
+        return args;
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(
+    private SqlQuery getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return new SqlQuery(sWeatherByLocationSettingQueryBuilder.buildQuery(
                 projection,
                 sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
                 null,
                 null,
-                sortOrder
-        );
+                sortOrder,
+                null
+        ), new String[]{locationSetting, Long.toString(date)});
+    }
+
+    private SqlQuery getWeatherAggregate(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.AggregateEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.AggregateEntry.getStartDateFromUri(uri);
+        long endDate = WeatherContract.AggregateEntry.getEndDateFromUri(uri);
+
+        String groupBy = null;
+        SQLiteQueryBuilder builder = sWeatherAggregateQueryBuilder;
+        if (WeatherContract.AggregateEntry.isGroupedByCondition(uri)) {
+            groupBy = WeatherContract.AggregateEntry.COLUMN_CONDITION_CLASS;
+            builder = sWeatherAggregateByConditionQueryBuilder;
+            if (sortOrder == null) {
+                sortOrder = WeatherContract.AggregateEntry.COLUMN_CONDITION_CLASS + " ASC";
+            }
+        }
+
+        return new SqlQuery(builder.buildQuery(
+                projection,
+                sAggregateSelection,
+                groupBy,
+                null,
+                sortOrder,
+                null
+        ), new String[]{locationSetting, Long.toString(startDate), Long.toString(endDate)});
+    }
+
+    private SqlQuery getLocationsBySearch(Uri uri, String[] projection, String sortOrder) {
+        String match = buildSearchMatch(WeatherContract.LocationEntry.getSearchQueryFromUri(uri));
+        if (sortOrder == null) {
+            sortOrder = WeatherContract.LocationEntry.COLUMN_CITY_NAME + " ASC";
+        }
+
+        return new SqlQuery(sLocationSearchQueryBuilder.buildQuery(
+                projection,
+                // Nothing worth searching for, so match nothing rather than hand FTS an empty
+                // expression
+                match.length() == 0 ? "0" : sLocationSearchSelection,
+                null,
+                null,
+                sortOrder,
+                LOCATION_SEARCH_LIMIT
+        ), match.length() == 0 ? null : new String[]{match});
+    }
+
+    /*
+        Turns whatever the user typed into an FTS expression of prefix terms, so "san fr" becomes
+        "san* fr*".  Only letters and digits survive, which keeps quotes, operators and column
+        filters typed by the user from ever reaching the MATCH syntax.
+     */
+    static String buildSearchMatch(String query) {
+        StringBuilder match = new StringBuilder();
+        if (query == null) return "";
+        // Lower case also defuses OR/AND/NOT, which FTS only treats as operators in upper case
+        for (String term : query.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() == 0) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(term).append('*');
+        }
+        return match.toString();
+    }
+
+    //SELECT _id FROM location WHERE location_setting = ?
+    private static final String sLocationIdSql =
+            "SELECT " + WeatherContract.LocationEntry._ID +
+                    " FROM " + WeatherContract.LocationEntry.TABLE_NAME +
+                    " WHERE " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    // Both summaries read whole rows, several columns each, which only a cursor can do in one
+    // step: METHOD_GET_TODAY is this with a limit of one, so its fields all come from the same
+    // row even while a sync replaces it.  Constant SQL, so SQLite's per-connection statement
+    // cache keeps it compiled between calls, and it walks the UNIQUE (location_id, date) key.
+    //SELECT date, weather_id, short_desc, max, min FROM weather_view
+    //    WHERE location_id = ? AND date >= ? ORDER BY date ASC LIMIT ?
+    private static final String sSummarySql =
+            "SELECT " + WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP +
+                    " FROM " + WeatherEncoding.VIEW_NAME +
+                    " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?" +
+                    " ORDER BY " + WeatherContract.WeatherEntry.COLUMN_DATE + " ASC LIMIT ?";
+
+    // these indices must match sSummarySql
+    private static final int SUMMARY_DATE = 0;
+    private static final int SUMMARY_WEATHER_ID = 1;
+    private static final int SUMMARY_SHORT_DESC = 2;
+    private static final int SUMMARY_MAX_TEMP = 3;
+    private static final int SUMMARY_MIN_TEMP = 4;
+
+    private long getLocationId(SQLiteDatabase db, String locationSetting) {
+        synchronized (this) {
+            if (mLocationIdStatement == null) {
+                mLocationIdStatement = db.compileStatement(sLocationIdSql);
+            }
+            mLocationIdStatement.bindString(1, locationSetting);
+            try {
+                return mLocationIdStatement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                // No such location
+                return -1;
+            } finally {
+                mLocationIdStatement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.MetricsEntry.METHOD_DUMP_METRICS.equals(method)) {
+            return mMetrics.dump();
+        }
+        if (WeatherContract.MetricsEntry.METHOD_RESET_METRICS.equals(method)) {
+            final Bundle thresholds = extras != null ? extras : Bundle.EMPTY;
+            mMetrics.reset();
+            mMetrics.setSlowThresholds(
+                    thresholds.getLong(WeatherContract.MetricsEntry.EXTRA_SLOW_READ_NANOS,
+                            ProviderMetrics.DEFAULT_SLOW_READ_NANOS),
+                    thresholds.getLong(WeatherContract.MetricsEntry.EXTRA_SLOW_WRITE_NANOS,
+                            ProviderMetrics.DEFAULT_SLOW_WRITE_NANOS));
+            return null;
+        }
+
+        final long start = System.nanoTime();
+        final boolean today = WeatherContract.SummaryEntry.METHOD_GET_TODAY.equals(method);
+        if (!today && !WeatherContract.SummaryEntry.METHOD_GET_DAYS.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        if (arg == null) {
+            throw new IllegalArgumentException("Missing location setting for " + method);
+        }
+
+        long startDate = System.currentTimeMillis();
+        int dayCount = WeatherContract.SummaryEntry.DEFAULT_DAY_COUNT;
+        if (extras != null) {
+            startDate = extras.getLong(WeatherContract.SummaryEntry.EXTRA_START_DATE, startDate);
+            dayCount = extras.getInt(WeatherContract.SummaryEntry.EXTRA_DAY_COUNT, dayCount);
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = getLocationId(db, arg);
+        if (locationId == -1) return null;
+
+        if (today) dayCount = 1;
+
+        Cursor cursor = db.rawQuery(sSummarySql, new String[]{
+                Long.toString(locationId),
+                Long.toString(WeatherContract.normalizeDate(startDate)),
+                Integer.toString(dayCount)});
+        try {
+            final int count = cursor.getCount();
+            recordOperation(ProviderMetrics.OP_CALL, UriMatcher.NO_MATCH, method, start, count);
+            if (today) {
+                if (!cursor.moveToFirst()) return null;
+                Bundle result = new Bundle();
+                result.putLong(WeatherContract.SummaryEntry.KEY_DATE, cursor.getLong(SUMMARY_DATE));
+                result.putInt(WeatherContract.SummaryEntry.KEY_WEATHER_ID,
+                        cursor.getInt(SUMMARY_WEATHER_ID));
+                result.putString(WeatherContract.SummaryEntry.KEY_SHORT_DESC,
+                        cursor.getString(SUMMARY_SHORT_DESC));
+                result.putDouble(WeatherContract.SummaryEntry.KEY_MAX_TEMP,
+                        cursor.getDouble(SUMMARY_MAX_TEMP));
+                result.putDouble(WeatherContract.SummaryEntry.KEY_MIN_TEMP,
+                        cursor.getDouble(SUMMARY_MIN_TEMP));
+                return result;
+            }
+
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            String[] descriptions = new String[count];
+            double[] maxTemps = new double[count];
+            double[] minTemps = new double[count];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                dates[i] = cursor.getLong(SUMMARY_DATE);
+                weatherIds[i] = cursor.getInt(SUMMARY_WEATHER_ID);
+                descriptions[i] = cursor.getString(SUMMARY_SHORT_DESC);
+                maxTemps[i] = cursor.getDouble(SUMMARY_MAX_TEMP);
+                minTemps[i] = cursor.getDouble(SUMMARY_MIN_TEMP);
+            }
+            Bundle result = new Bundle();
+            result.putLongArray(WeatherContract.SummaryEntry.KEY_DATES, dates);
+            result.putIntArray(WeatherContract.SummaryEntry.KEY_WEATHER_IDS, weatherIds);
+            result.putStringArray(WeatherContract.SummaryEntry.KEY_SHORT_DESCS, descriptions);
+            result.putDoubleArray(WeatherContract.SummaryEntry.KEY_MAX_TEMPS, maxTemps);
+            result.putDoubleArray(WeatherContract.SummaryEntry.KEY_MIN_TEMPS, minTemps);
+            return result;
+        } finally {
+            cursor.close();
+        }
     }
 
     /*
@@ -130,6 +499,10 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_SEARCH + "/*", LOCATION_SEARCH);
+
+        matcher.addURI(authority, WeatherContract.PATH_AGGREGATE + "/*", AGGREGATE_WITH_LOCATION);
         return matcher;
     }
 
@@ -164,6 +537,10 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_SEARCH:
+                return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case AGGREGATE_WITH_LOCATION:
+                return WeatherContract.AggregateEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,60 +549,136 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        final long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
-        // and query the database accordingly.
-        Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        // and build the query for it.
+        SqlQuery query;
+        Uri notificationUri = uri;
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                query = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                query = getWeatherByLocationSetting(uri, projection, sortOrder);
                 break;
             }
             // "weather"
             case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
+                query = getWeather(uri, projection, selection, selectionArgs, sortOrder);
                 break;
             }
             // "location"
             case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
+                query = new SqlQuery(SQLiteQueryBuilder.buildQueryString(false,
                         WeatherContract.LocationEntry.TABLE_NAME,
                         projection,
                         selection,
-                        selectionArgs,
                         null,
                         null,
-                        sortOrder
-                );
+                        sortOrder,
+                        null
+                ), selectionArgs);
+                break;
+            }
+            // "location/search/*"
+            case LOCATION_SEARCH: {
+                query = getLocationsBySearch(uri, projection, sortOrder);
+                // Results change with the location table, not with the search uri
+                notificationUri = WeatherContract.LocationEntry.CONTENT_URI;
+                break;
+            }
+            // "aggregate/*"
+            case AGGREGATE_WITH_LOCATION: {
+                query = getWeatherAggregate(uri, projection, sortOrder);
+                // Aggregates are derived from the weather table, so they go stale whenever it
+                // changes rather than when their own uri is notified.
+                notificationUri = WeatherContract.WeatherEntry.CONTENT_URI;
                 break;
             }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        Cursor retCursor = db.rawQuery(query.sql, query.args);
+        // rawQuery only compiles the statement; counting runs it and fills the first window, so
+        // the time recorded is what the caller actually waits for (and it would count anyway)
+        final int rows = retCursor.getCount();
+        final long elapsed = System.nanoTime() - start;
+        final String caller = getCallerLabel();
+        if (mMetrics.record(ProviderMetrics.OP_QUERY, match, elapsed, rows, caller)) {
+            mMetrics.addSample(ProviderMetrics.OP_QUERY, match, uri.toString(), elapsed, rows,
+                    caller, explainQueryPlan(db, query));
+        }
+        retCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return retCursor;
     }
 
+    private void recordOperation(int op, int match, String what, long start, int rows) {
+        final long elapsed = System.nanoTime() - start;
+        final String caller = getCallerLabel();
+        if (mMetrics.record(op, match, elapsed, rows, caller)) {
+            mMetrics.addSample(op, match, what, elapsed, rows, caller, null);
+        }
+    }
+
+    /*
+        Who is on the other end of this call.  Another process is named by its package, while
+        our own threads are named by the thread, which tells the loaders, sync adapter and
+        widget services apart; pool numbers are dropped so that a pool counts as one caller.
+     */
+    private String getCallerLabel() {
+        final int uid = Binder.getCallingUid();
+        if (uid == Process.myUid()) {
+            return getThreadLabel();
+        }
+        String name = mCallerNames.get(uid);
+        if (name == null) {
+            PackageManager pm = getContext().getPackageManager();
+            name = pm.getNameForUid(uid);
+            if (name == null) name = "uid:" + uid;
+            mCallerNames.put(uid, name);
+        }
+        return name;
+    }
+
+    private static String getThreadLabel() {
+        final String thread = Thread.currentThread().getName();
+        String[] label = sThreadLabels.get();
+        if (label == null || !label[0].equals(thread)) {
+            label = new String[]{thread,
+                    "self:" + sThreadNumberPattern.matcher(thread).replaceFirst("")};
+            sThreadLabels.set(label);
+        }
+        return label[1];
+    }
+
+    private static String explainQueryPlan(SQLiteDatabase db, SqlQuery query) {
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + query.sql, query.args);
+        try {
+            final int detail = plan.getColumnIndex("detail");
+            StringBuilder result = new StringBuilder();
+            while (plan.moveToNext()) {
+                if (result.length() > 0) result.append('\n');
+                result.append(plan.getString(detail));
+            }
+            return result.toString();
+        } finally {
+            plan.close();
+        }
+    }
+
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        final long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
@@ -233,7 +686,14 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id;
+                db.beginTransaction();
+                try {
+                    _id = WeatherEncoding.insertWeather(db, values, null);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -252,11 +712,13 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         getContext().getContentResolver().notifyChange(uri, null);
+        recordOperation(ProviderMetrics.OP_INSERT, match, uri.toString(), start, 1);
         return returnUri;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        final long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
@@ -264,8 +726,8 @@ public class WeatherProvider extends ContentProvider {
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                        WeatherEncoding.selectStoredRows(selection), selectionArgs);
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
@@ -278,6 +740,7 @@ public class WeatherProvider extends ContentProvider {
         if (rowsDeleted != 0) {
             getContext().getContentResolver().notifyChange(uri, null);
         }
+        recordOperation(ProviderMetrics.OP_DELETE, match, uri.toString(), start, rowsDeleted);
         return rowsDeleted;
     }
 
@@ -292,6 +755,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        final long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
@@ -299,8 +763,15 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                // The selection may name any of the contract's columns, stored or decoded
+                db.beginTransaction();
+                try {
+                    rowsUpdated = WeatherEncoding.updateWeather(db, values, selection,
+                            selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
@@ -312,21 +783,25 @@ public class WeatherProvider extends ContentProvider {
         if (rowsUpdated != 0) {
             getContext().getContentResolver().notifyChange(uri, null);
         }
+        recordOperation(ProviderMetrics.OP_UPDATE, match, uri.toString(), start, rowsUpdated);
         return rowsUpdated;
     }
 
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
+        final long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                // Descriptions already recorded in this batch, so each is written once
+                final HashMap<Integer, String> conditions = new HashMap<>();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = WeatherEncoding.insertWeather(db, value, conditions);
                         if (_id != -1) {
                             returnCount++;
                         }
@@ -336,6 +811,8 @@ public class WeatherProvider extends ContentProvider {
                     db.endTransaction();
                 }
                 getContext().getContentResolver().notifyChange(uri, null);
+                recordOperation(ProviderMetrics.OP_BULK_INSERT, match, uri.toString(), start,
+                        returnCount);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
@@ -348,6 +825,12 @@ public class WeatherProvider extends ContentProvider {
     @Override
     @TargetApi(11)
     public void shutdown() {
+        synchronized (this) {
+            if (mLocationIdStatement != null) {
+                mLocationIdStatement.close();
+                mLocationIdStatement = null;
+            }
+        }
         mOpenHelper.close();
         super.shutdown();
     }
@@ -2,7 +2,6 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
@@ -18,22 +17,26 @@ import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.ArtBitmaps;
+import com.example.android.sunshine.app.ArtCache;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.CityCatalog;
+import com.example.android.sunshine.app.data.DayMath;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
@@ -59,32 +62,25 @@ import java.net.URL;
 import java.util.UUID;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
+    // Sent when the units or art pack change: the weather is the same, only shown differently
+    public static final String ACTION_DISPLAY_SETTINGS_CHANGED =
+            "com.example.android.sunshine.app.ACTION_DISPLAY_SETTINGS_CHANGED";
     // Interval at which to sync with the weather, in seconds.
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
+    // Number of days fetched per sync, and so the most any forecast list can show
+    public static final int FORECAST_DAYS = 14;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -101,6 +97,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private static final String KEY_WEATHER_ID = "weather_id";
     private static final String KEY_MIN_TEMP = "min_temp";
     private static final String KEY_MAX_TEMP = "max_temp";
+    private static final long WATCH_CONNECT_TIMEOUT_SECONDS = 30;
+
+    // Today's weather as last sent to the watch, to send again in other units
+    private static volatile Bundle sWatchToday;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
@@ -128,7 +128,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
         String format = "json";
         String units = "metric";
-        int numDays = 14;
 
         try {
             // Construct the URL for the OpenWeatherMap query
@@ -137,16 +136,25 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             final String FORECAST_BASE_URL =
                     "http://api.openweathermap.org/data/2.5/forecast/daily?";
             final String QUERY_PARAM = "q";
+            final String ID_PARAM = "id";
             final String FORMAT_PARAM = "mode";
             final String UNITS_PARAM = "units";
             final String DAYS_PARAM = "cnt";
             final String APPID_PARAM = "APPID";
 
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
+            // When the offline catalog knows exactly which city the setting names, ask for it
+            // by id; OWM resolves ids unambiguously, unlike free text queries.
+            CityCatalog.City city = CityCatalog.getInstance(getContext()).findExact(locationQuery);
+            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+            if (city != null) {
+                uriBuilder.appendQueryParameter(ID_PARAM, Integer.toString(city.id));
+            } else {
+                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+            }
+            Uri builtUri = uriBuilder
                     .appendQueryParameter(FORMAT_PARAM, format)
                     .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(FORECAST_DAYS))
                     .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
                     .build();
 
@@ -292,14 +300,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // current day, we're going to take advantage of that to get a nice
             // normalized UTC date for all of our weather.
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
             // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
+            long startDay = DayMath.toEpochDay(System.currentTimeMillis());
 
             for(int i = 0; i < weatherArray.length(); i++) {
                 // These are the values that will be collected.
@@ -318,8 +320,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 // Get the JSON object representing the day
                 JSONObject dayForecast = weatherArray.getJSONObject(i);
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+                // Already normalized, so the provider's own normalizing is a no-op
+                dateTime = DayMath.startOfDay(startDay + i);
 
                 pressure = dayForecast.getDouble(OWM_PRESSURE);
                 humidity = dayForecast.getInt(OWM_HUMIDITY);
@@ -365,9 +367,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 // delete old data so we don't build up an endless history
                 getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+                        new String[] {Long.toString(DayMath.startOfDay(startDay - 1))});
 
                 updateWatchFace();
+                // Before the widgets are told, so they find the art ready
+                ArtCache.prefetch(getContext());
                 updateWidgets();
                 updateMuzei();
                 notifyWeather();
@@ -382,33 +386,30 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
     }
 
+    /*
+        Today's forecast for the preferred location, read through the provider's call() fast
+        path.  Null unless there is a forecast for today itself.
+     */
+    private static Bundle getTodaySummary(Context context) {
+        String locationQuery = Utility.getPreferredLocation(context);
+        Bundle today = context.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.SummaryEntry.METHOD_GET_TODAY, locationQuery, null);
+        if (today == null || today.getLong(WeatherContract.SummaryEntry.KEY_DATE)
+                != WeatherContract.normalizeDate(System.currentTimeMillis())) {
+            return null;
+        }
+        return today;
+    }
+
     private void updateWatchFace(){
         Log.d(LOG_TAG, "Update WatchFace ");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        // we'll query our contentProvider, as always
-        Cursor cursor = getContext().getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double mMaxTemp = cursor.getDouble(INDEX_MAX_TEMP);
-            double mMinTemp = cursor.getDouble(INDEX_MIN_TEMP);
+        Bundle today = getTodaySummary(getContext());
 
+        if (today != null) {
+            sWatchToday = today;
             if (mGoogleApiClient != null) {
                 mGoogleApiClient.connect();
-                String id = UUID.randomUUID().toString();
-
-                Log.d(LOG_TAG, "id = " + id + ",mMaxTemp " + mMaxTemp + ", mMinTemp " + mMinTemp + ", weatherId "+ weatherId);
-
-                PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(KEY_PATH);
-                putDataMapRequest.getDataMap().putString(KEY_UUID, id);
-                putDataMapRequest.getDataMap().putString(KEY_MAX_TEMP, Utility.formatTemperature(getContext(), mMaxTemp));
-                putDataMapRequest.getDataMap().putString(KEY_MIN_TEMP, Utility.formatTemperature(getContext(), mMinTemp));
-                putDataMapRequest.getDataMap().putInt(KEY_WEATHER_ID, weatherId);
-
-                PutDataRequest request = putDataMapRequest.asPutDataRequest();
+                PutDataRequest request = createWatchFaceRequest(getContext(), today);
                 Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
                     @Override
                     public void onResult(DataApi.DataItemResult dataItemResult) {
@@ -422,6 +423,61 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
     }
 
+    private static PutDataRequest createWatchFaceRequest(Context context, Bundle today) {
+        int weatherId = today.getInt(WeatherContract.SummaryEntry.KEY_WEATHER_ID);
+        double maxTemp = today.getDouble(WeatherContract.SummaryEntry.KEY_MAX_TEMP);
+        double minTemp = today.getDouble(WeatherContract.SummaryEntry.KEY_MIN_TEMP);
+        String id = UUID.randomUUID().toString();
+
+        Log.d(SunshineSyncAdapter.class.getSimpleName(), "id = " + id + ",mMaxTemp " + maxTemp
+                + ", mMinTemp " + minTemp + ", weatherId " + weatherId);
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(KEY_PATH);
+        putDataMapRequest.getDataMap().putString(KEY_UUID, id);
+        putDataMapRequest.getDataMap().putString(KEY_MAX_TEMP, Utility.formatTemperature(context, maxTemp));
+        putDataMapRequest.getDataMap().putString(KEY_MIN_TEMP, Utility.formatTemperature(context, minTemp));
+        putDataMapRequest.getDataMap().putInt(KEY_WEATHER_ID, weatherId);
+        return putDataMapRequest.asPutDataRequest();
+    }
+
+    /**
+     * Has the widgets and the watch show the weather they already have in the current units
+     * and art pack.  Neither goes back to the network, and the watch is sent what it was last
+     * sent, formatted again, unless the process has restarted since.
+     */
+    public static void onDisplaySettingsChanged(Context context) {
+        final Context appContext = context.getApplicationContext();
+        appContext.sendBroadcast(new Intent(ACTION_DISPLAY_SETTINGS_CHANGED)
+                .setPackage(appContext.getPackageName()));
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle today = sWatchToday;
+                if (today == null) {
+                    today = getTodaySummary(appContext);
+                }
+                if (today == null) return;
+                GoogleApiClient client = new GoogleApiClient.Builder(appContext)
+                        .addApi(Wearable.API)
+                        .build();
+                ConnectionResult connection = client.blockingConnect(
+                        WATCH_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (!connection.isSuccess()) return;
+                try {
+                    DataApi.DataItemResult result = Wearable.DataApi.putDataItem(client,
+                            createWatchFaceRequest(appContext, today)).await();
+                    if (!result.getStatus().isSuccess()) {
+                        Log.d(SunshineSyncAdapter.class.getSimpleName(),
+                                "updateWatchFace failed");
+                    }
+                } finally {
+                    client.disconnect();
+                }
+            }
+        });
+    }
+
     @Override
     public void onConnected(Bundle bundle) {
         Log.d(LOG_TAG, "Google Api Client onConnected");
@@ -458,59 +514,45 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
-
-        if ( displayNotifications ) {
+        if ( SettingsSnapshot.get(context).notificationsEnabled ) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
 
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                Bundle today = getTodaySummary(context);
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != null) {
+                    int weatherId = today.getInt(WeatherContract.SummaryEntry.KEY_WEATHER_ID);
+                    double high = today.getDouble(WeatherContract.SummaryEntry.KEY_MAX_TEMP);
+                    double low = today.getDouble(WeatherContract.SummaryEntry.KEY_MIN_TEMP);
+                    String desc = today.getString(WeatherContract.SummaryEntry.KEY_SHORT_DESC);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
                     String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
 
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
+                    // Retrieve the large icon, from the bundled art without a trip through Glide
+                    // when that's what's in use
                     Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
+                    if (SettingsSnapshot.get(context).localGraphics) {
+                        largeIcon = ArtBitmaps.getLargeIcon(context, artResourceId);
+                    } else {
+                        try {
+                            largeIcon = Glide.with(context)
+                                    .load(artUrl)
+                                    .asBitmap()
+                                    .error(artResourceId)
+                                    .fitCenter()
+                                    .into(ArtBitmaps.getLargeIconWidth(resources),
+                                            ArtBitmaps.getLargeIconHeight(resources)).get();
+                        } catch (InterruptedException | ExecutionException e) {
+                            Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                            largeIcon = ArtBitmaps.getLargeIcon(context, artResourceId);
+                        }
                     }
                     String title = context.getString(R.string.app_name);
 
@@ -557,7 +599,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
@@ -590,6 +631,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // First create a ContentValues object to hold the data you want to insert.
             ContentValues locationValues = new ContentValues();
 
+            // Prefer the catalog's canonical name and position for the city, falling back to
+            // the nearest catalog city for settings such as postal codes that name no city.
+            CityCatalog catalog = CityCatalog.getInstance(getContext());
+            CityCatalog.City city = catalog.findExact(locationSetting);
+            if (city != null) {
+                cityName = city.name;
+                lat = city.lat;
+                lon = city.lon;
+            } else if (cityName == null || cityName.length() == 0) {
+                city = catalog.findNearest(lat, lon);
+                if (city != null) cityName = city.name;
+            }
+
             // Then add the data, along with the corresponding name of the data type,
             // so the content provider knows what kind of value is being inserted.
             locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
@@ -714,5 +768,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         SharedPreferences.Editor spe = sp.edit();
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.commit();
+        // The snapshot's listener runs later on the main thread; widgets and the like started
+        // from here shouldn't see the old status until then
+        SettingsSnapshot.refresh(c);
     }
 }
\ No newline at end of file
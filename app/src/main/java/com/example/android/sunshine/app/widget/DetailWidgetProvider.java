@@ -57,7 +57,13 @@ public class DetailWidgetProvider extends AppWidgetProvider {
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
+        String action = intent.getAction();
+        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(action)
+                || SunshineSyncAdapter.ACTION_DISPLAY_SETTINGS_CHANGED.equals(action)) {
+            if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(action)) {
+                // Otherwise the list shows the days it has, in the new units or art
+                DetailWidgetRemoteViewsService.onDataUpdated();
+            }
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
             int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, getClass()));
@@ -7,21 +7,41 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.ArtCache;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.DayMath;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
+ * RemoteViewsService controlling the data being shown in the scrollable weather detail widget.
+ *
+ * With a remote art pack, each refresh loads the art for the conditions in the forecast up
+ * front, a few at a time, so rows are built from memory.  Art is kept at the widget icon's size
+ * in a small cache shared by every widget, and a row for a condition whose art failed to load
+ * shows the bundled icon instead.
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
@@ -42,10 +62,68 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // Bumped whenever the weather changes; when it hasn't, a refresh formats the days it has
+    private static final AtomicInteger sDataVersion = new AtomicInteger();
+
+    // Art loads in flight at once.  Each holds a Glide thread, which the app's lists share.
+    private static final int MAX_PARALLEL_ART_LOADS = 3;
+    // One for each picture in an art pack
+    private static final int MAX_CACHED_ART = 8;
+
+    // Art urls to icons, shared by every widget
+    private static LruCache<String, Bitmap> sArtCache;
+
+    /**
+     * One row of the forecast, as read.  What it shows is formatted as the row is asked for,
+     * so a change of units or art only needs the rows asked for again.
+     */
+    private static final class Day {
+        final long id;
+        final long date;
+        final int weatherId;
+        final String description;
+        final double high;
+        final double low;
+
+        Day(Cursor cursor) {
+            id = cursor.getLong(INDEX_WEATHER_ID);
+            date = cursor.getLong(INDEX_WEATHER_DATE);
+            weatherId = cursor.getInt(INDEX_WEATHER_CONDITION_ID);
+            description = cursor.getString(INDEX_WEATHER_DESC);
+            high = cursor.getDouble(INDEX_WEATHER_MAX_TEMP);
+            low = cursor.getDouble(INDEX_WEATHER_MIN_TEMP);
+        }
+    }
+
+    private static synchronized LruCache<String, Bitmap> getArtCache(int iconSize) {
+        if (sArtCache == null) {
+            sArtCache = new LruCache<String, Bitmap>(iconSize * iconSize * 4 * MAX_CACHED_ART) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+        }
+        return sArtCache;
+    }
+
+    /**
+     * Has the next refresh read the forecast again, rather than showing the days it has.
+     */
+    static void onDataUpdated() {
+        sDataVersion.incrementAndGet();
+    }
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            private List<Day> data = Collections.emptyList();
+            // What the days were read for, so a refresh can tell whether they still stand
+            private String dataLocation;
+            private int dataVersion = -1;
+            private long dataDay = Long.MIN_VALUE;
+            // The art for this refresh's days, by url; empty with the bundled art
+            private Map<String, Bitmap> art = Collections.emptyMap();
 
             @Override
             public void onCreate() {
@@ -54,68 +132,157 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
+                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                int version = sDataVersion.get();
+                // The days start from today, so they're read again once the date has moved on
+                long today = DayMath.toEpochDay(System.currentTimeMillis());
+                // When only the units or art have changed, getViewAt picks them up
+                if (version != dataVersion || !location.equals(dataLocation) || today != dataDay) {
+                    readDays(location);
+                    dataLocation = location;
+                    dataVersion = version;
+                    dataDay = today;
                 }
+                loadArt();
+            }
+
+            private void readDays(String location) {
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
+                Uri weatherForLocationUri = WeatherContract.WeatherEntry.withLimit(
+                        WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                                location, System.currentTimeMillis()),
+                        SunshineSyncAdapter.FORECAST_DAYS);
+                Cursor cursor = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                List<Day> days = new ArrayList<>();
+                if (cursor != null) {
+                    try {
+                        while (cursor.moveToNext()) {
+                            days.add(new Day(cursor));
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                data = days;
+            }
+
+            // Loads the art for every condition in the forecast, blocking until it's done
+            private void loadArt() {
+                Map<String, Bitmap> loaded = new HashMap<>();
+                if (Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    // Rows show the bundled icons by resource, and send no bitmaps
+                    art = loaded;
+                    return;
+                }
+                long start = SystemClock.elapsedRealtime();
+                int size = ArtCache.getSize(DetailWidgetRemoteViewsService.this,
+                        ArtCache.SIZE_ICON);
+                LruCache<String, Bitmap> cache = getArtCache(size);
+                Set<String> artUrls = new LinkedHashSet<>();
+                for (Day day : data) {
+                    String artUrl = Utility.getArtUrlForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this, day.weatherId);
+                    if (artUrl != null) {
+                        artUrls.add(artUrl);
+                    }
+                }
+
+                Deque<FutureTarget<Bitmap>> loads = new ArrayDeque<>();
+                Deque<String> loadUrls = new ArrayDeque<>();
+                for (String artUrl : artUrls) {
+                    Bitmap bitmap = cache.get(artUrl);
+                    if (bitmap != null) {
+                        loaded.put(artUrl, bitmap);
+                        continue;
+                    }
+                    if (loads.size() == MAX_PARALLEL_ART_LOADS) {
+                        finishLoad(loads.removeFirst(), loadUrls.removeFirst(), cache, loaded);
+                    }
+                    // Starts loading straight away; sized as the prefetch after each sync was
+                    loads.addLast(ArtCache.loadBitmap(DetailWidgetRemoteViewsService.this,
+                            artUrl, ArtCache.SIZE_ICON).into(size, size));
+                    loadUrls.addLast(artUrl);
+                }
+                while (!loads.isEmpty()) {
+                    finishLoad(loads.removeFirst(), loadUrls.removeFirst(), cache, loaded);
+                }
+                art = loaded;
+
+                // Every row sends its own copy of its bitmap to the host
+                long ipcBytes = 0;
+                for (Day day : data) {
+                    Bitmap bitmap = loaded.get(Utility.getArtUrlForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this, day.weatherId));
+                    if (bitmap != null) {
+                        ipcBytes += bitmap.getByteCount();
+                    }
+                }
+                Log.d(LOG_TAG, "Refresh: " + data.size() + " rows, " + loaded.size() + " of "
+                        + artUrls.size() + " pictures in "
+                        + (SystemClock.elapsedRealtime() - start) + "ms, " + ipcBytes
+                        + " bytes of bitmaps over IPC");
+            }
+
+            private void finishLoad(FutureTarget<Bitmap> load, String artUrl,
+                                    LruCache<String, Bitmap> cache, Map<String, Bitmap> loaded) {
+                try {
+                    // A copy, since Glide reuses the bitmap once the load is cleared
+                    Bitmap bitmap = load.get();
+                    Bitmap copy = bitmap.copy(bitmap.getConfig(), false);
+                    if (copy != null) {
+                        cache.put(artUrl, copy);
+                        loaded.put(artUrl, copy);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error retrieving icon from " + artUrl, e);
+                } finally {
+                    Glide.clear(load);
+                }
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                data = Collections.emptyList();
+                art = Collections.emptyMap();
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return data.size();
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
                 if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                        position < 0 || position >= data.size()) {
                     return null;
                 }
+                Day day = data.get(position);
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                int weatherId = day.weatherId;
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                // Loaded by onDataSetChanged, if there's any to show
+                String artUrl = Utility.getArtUrlForWeatherCondition(
+                        DetailWidgetRemoteViewsService.this, weatherId);
+                Bitmap weatherArtImage = artUrl == null ? null : art.get(artUrl);
+                String description = day.description;
+                long dateInMillis = day.date;
                 String formattedDate = Utility.getFriendlyDayString(
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+                double maxTemp = day.high;
+                double minTemp = day.low;
                 String formattedMaxTemperature =
                         Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
                 String formattedMinTemperature =
@@ -161,8 +328,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                if (position >= 0 && position < data.size())
+                    return data.get(position).id;
                 return position;
             }
 
@@ -21,11 +21,11 @@ import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -33,22 +33,26 @@ import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
- * IntentService which handles updating all Today widgets with the latest data
+ * IntentService which handles updating all Today widgets with the latest data.  Widgets of the
+ * same size share one rendering of each layout, and a widget that already shows what it would
+ * be sent isn't sent anything.  State is kept between updates in statics, which only the
+ * service's worker thread touches.
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+
+    private static final String LOG_TAG = TodayWidgetIntentService.class.getSimpleName();
+
+    // Today's weather as last read, and where for, to show again when only the units change
+    private static String sLocation;
+    private static Bundle sToday;
+    // The views rendered for sRenderedContent, by layout
+    private static String sRenderedContent;
+    private static final SparseArray<RemoteViews> sRendered = new SparseArray<>();
+    // What was last pushed to each widget, by id: its layout and content
+    private static SparseArray<String> sPushed = new SparseArray<>();
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -61,36 +65,48 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
+        // Get today's data from the ContentProvider, unless only the units or art have changed
+        // since it was last read
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
+        Bundle today;
+        if (SunshineSyncAdapter.ACTION_DISPLAY_SETTINGS_CHANGED.equals(intent.getAction())
+                && null != sToday && location.equals(sLocation)) {
+            today = sToday;
+        } else {
+            today = getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.SummaryEntry.METHOD_GET_TODAY, location, null);
         }
-        if (!data.moveToFirst()) {
-            data.close();
+        if (today == null) {
             return;
         }
+        sLocation = location;
+        sToday = today;
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
+        // Extract the weather data from the summary
+        int weatherId = today.getInt(WeatherContract.SummaryEntry.KEY_WEATHER_ID);
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
+        String description = today.getString(WeatherContract.SummaryEntry.KEY_SHORT_DESC);
+        double maxTemp = today.getDouble(WeatherContract.SummaryEntry.KEY_MAX_TEMP);
+        double minTemp = today.getDouble(WeatherContract.SummaryEntry.KEY_MIN_TEMP);
         String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
 
-        // Perform this loop procedure for each Today widget
+        // Everything the widgets show, so views rendered for it can be reused until it changes
+        String content = weatherArtResourceId + "|" + description + "|"
+                + formattedMaxTemperature + "|" + formattedMinTemperature;
+        if (!content.equals(sRenderedContent)) {
+            sRendered.clear();
+            sRenderedContent = content;
+        }
+
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<String> pushed = new SparseArray<>(appWidgetIds.length);
+        int[] requestedIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+        int skipped = 0;
         for (int appWidgetId : appWidgetIds) {
             // Find the correct layout based on the widget's width
             int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,26 +115,60 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+            // Nothing to do if the widget already shows this, in this layout
+            String widgetContent = layoutId + "|" + content;
+            pushed.put(appWidgetId, widgetContent);
+            if (widgetContent.equals(sPushed.get(appWidgetId))
+                    && !contains(requestedIds, appWidgetId)) {
+                skipped++;
+                continue;
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+            // Each layout is rendered once and shared by every widget using it
+            RemoteViews views = sRendered.get(layoutId);
+            if (null == views) {
+                views = render(layoutId, weatherArtResourceId, description,
+                        formattedMaxTemperature, formattedMinTemperature);
+                sRendered.put(layoutId, views);
+            }
 
             // Tell the AppWidgetManager to perform an update on the current app widget
             appWidgetManager.updateAppWidget(appWidgetId, views);
         }
+        // Only the widgets there are now, so removed ones are forgotten
+        sPushed = pushed;
+        Log.d(LOG_TAG, "Updated " + (appWidgetIds.length - skipped) + " of "
+                + appWidgetIds.length + " widgets, from " + sRendered.size() + " layouts");
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        if (null == ids) return false;
+        for (int each : ids) {
+            if (each == id) return true;
+        }
+        return false;
+    }
+
+    private RemoteViews render(int layoutId, int weatherArtResourceId, String description,
+                               String formattedMaxTemperature, String formattedMinTemperature) {
+        RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
@@ -34,7 +34,9 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The host is asking for these widgets' views, so they're sent whatever they showed last
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds));
     }
 
     @Override
@@ -48,6 +50,10 @@ public class TodayWidgetProvider extends AppWidgetProvider {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
             context.startService(new Intent(context, TodayWidgetIntentService.class));
+        } else if (SunshineSyncAdapter.ACTION_DISPLAY_SETTINGS_CHANGED.equals(intent.getAction())) {
+            // Today's weather hasn't changed, so the service can show what it last read
+            context.startService(new Intent(context, TodayWidgetIntentService.class)
+                    .setAction(intent.getAction()));
         }
     }
 }
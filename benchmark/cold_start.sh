@@ -0,0 +1,146 @@
+#!/bin/sh
+#
+# Copyright (C) 2015 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Cold start benchmark: launches MainActivity from a stopped process over and over and reads
+# the StartupReport line each launch logs, then prints the runs and their medians as JSON.
+#
+#   benchmark/cold_start.sh [-d empty|single|many] [-w warmup] [-n iterations] [-o out.json]
+#
+#   -d  weather.db fixture to launch with (default single)
+#         empty   nothing stored
+#         single  14 days for one location
+#         many    14 days for each of 500 locations
+#   -w  launches to run and throw away first (default 2)
+#   -n  launches to measure (default 10)
+#   -o  file to write the JSON to (default stdout)
+#
+# Needs the app and its test APK installed (./gradlew installDebug installDebugAndroidTest)
+# and the app launched once, so its sync account exists and launching doesn't start a sync.
+# Times are milliseconds from process start; first_row is -1 for the empty database.
+
+set -e
+
+PACKAGE=com.example.android.sunshine.app
+TEST_PACKAGE=$PACKAGE.test
+RUNNER=android.test.InstrumentationTestRunner
+FIXTURES=com.example.android.sunshine.benchmark.StartupFixtures
+# How long to wait for a launch's report
+REPORT_TIMEOUT=30
+
+DATABASE=single
+WARMUP=2
+ITERATIONS=10
+OUTPUT=
+
+while getopts d:w:n:o: option; do
+    case $option in
+        d) DATABASE=$OPTARG ;;
+        w) WARMUP=$OPTARG ;;
+        n) ITERATIONS=$OPTARG ;;
+        o) OUTPUT=$OPTARG ;;
+        *) sed -n '17,32p' "$0" >&2; exit 2 ;;
+    esac
+done
+
+case $DATABASE in
+    empty) FIXTURE=testEmpty ;;
+    single) FIXTURE=testSingleLocation ;;
+    many) FIXTURE=testManyLocations ;;
+    *) echo "Unknown database: $DATABASE" >&2; exit 2 ;;
+esac
+
+echo "Loading the $DATABASE database" >&2
+RESULT=$(adb shell am instrument -w -e class "$FIXTURES#$FIXTURE" "$TEST_PACKAGE/$RUNNER")
+case $RESULT in
+    *"OK (1 test)"*) ;;
+    *) echo "$RESULT" >&2; echo "Couldn't load the $DATABASE database" >&2; exit 1 ;;
+esac
+
+# One cold launch.  Prints its report line, e.g.
+#   Startup report: application 35ms, activity 120ms, first frame 410ms, first load 430ms,
+#   first row 455ms, steps [...]
+launch() {
+    adb shell am force-stop $PACKAGE
+    adb logcat -c
+    adb shell am start -W -n $PACKAGE/.MainActivity > /dev/null
+    waited=0
+    while [ $waited -lt $REPORT_TIMEOUT ]; do
+        report=$(adb logcat -d -s StartupReport:I | tr -d '\r' | grep 'Startup report:' || true)
+        if [ -n "$report" ]; then
+            echo "$report"
+            return 0
+        fi
+        sleep 1
+        waited=$((waited + 1))
+    done
+    echo "No startup report within ${REPORT_TIMEOUT}s" >&2
+    return 1
+}
+
+# A milestone's time from a report line
+field() {
+    echo "$1" | sed -n "s/.*$2 \(-\{0,1\}[0-9]*\)ms.*/\1/p"
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : (v[NR / 2] + v[NR / 2 + 1]) / 2 }'
+}
+
+i=0
+while [ $i -lt "$WARMUP" ]; do
+    echo "Warmup $((i + 1)) of $WARMUP" >&2
+    launch > /dev/null
+    i=$((i + 1))
+done
+
+RUNS=
+FRAMES=
+LOADS=
+ROWS=
+i=0
+while [ $i -lt "$ITERATIONS" ]; do
+    echo "Launch $((i + 1)) of $ITERATIONS" >&2
+    report=$(launch)
+    frame=$(field "$report" "first frame")
+    load=$(field "$report" "first load")
+    row=$(field "$report" "first row")
+    [ -n "$RUNS" ] && RUNS="$RUNS,"
+    RUNS="$RUNS
+    {\"first_frame\": $frame, \"first_load\": $load, \"first_row\": $row}"
+    FRAMES="$FRAMES $frame"
+    LOADS="$LOADS $load"
+    ROWS="$ROWS $row"
+    i=$((i + 1))
+done
+
+JSON="{
+  \"database\": \"$DATABASE\",
+  \"warmup\": $WARMUP,
+  \"iterations\": $ITERATIONS,
+  \"median\": {
+    \"first_frame\": $(echo $FRAMES | tr ' ' '\n' | median),
+    \"first_load\": $(echo $LOADS | tr ' ' '\n' | median),
+    \"first_row\": $(echo $ROWS | tr ' ' '\n' | median)
+  },
+  \"runs\": [$RUNS
+  ]
+}"
+
+if [ -n "$OUTPUT" ]; then
+    echo "$JSON" > "$OUTPUT"
+else
+    echo "$JSON"
+fi
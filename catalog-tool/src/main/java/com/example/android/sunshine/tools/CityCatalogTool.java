@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.tools;
+
+import com.example.android.sunshine.app.data.CityCatalogWriter;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Converts OpenWeatherMap's bulk city list (the tab separated city_list.txt: id, name, lat, lon,
+ * country code) into the app's city catalog asset.  Run by the app's generateCityCatalog task:
+ *
+ *   ./gradlew :app:generateCityCatalog -PcityList=path/to/city_list.txt
+ */
+public class CityCatalogTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: CityCatalogTool <city_list.txt> <city_catalog.bin>");
+            System.exit(1);
+        }
+        CityCatalogWriter writer = new CityCatalogWriter();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(args[0]), Charset.forName("UTF-8")));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 5) continue;
+                try {
+                    writer.add(Integer.parseInt(fields[0].trim()), fields[1],
+                            fields[4], Double.parseDouble(fields[2]), Double.parseDouble(fields[3]));
+                } catch (NumberFormatException e) {
+                    // The header line, or a damaged row; neither belongs in the catalog
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        OutputStream out = new FileOutputStream(args[1]);
+        try {
+            writer.write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + writer.size() + " cities to " + args[1]);
+    }
+}
@@ -39,6 +39,7 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.weather.WeatherConditions;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -82,6 +83,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    // Resources for WeatherConditions' art, by its ART_ constants
+    private static final int[] ART_RESOURCES = {
+            R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain,
+            R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds};
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -123,6 +130,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         SimpleDateFormat mDateFormat;
         SimpleDateFormat mTimeFormat;
         SimpleDateFormat m24HrTimeFormat;
+        // The locale the formats were made for; they follow mCalendar's zone on their own
+        Locale mFormatsLocale;
         String mAmString;
         String mPmString;
 
@@ -234,13 +243,21 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         private void initFormats() {
-            mTimeFormat = new SimpleDateFormat("hh:mm", Locale.getDefault());
+            // Called whenever we become visible, but the formats only need making again for a
+            // new locale
+            Locale locale = Locale.getDefault();
+            if (locale.equals(mFormatsLocale)) {
+                return;
+            }
+            mFormatsLocale = locale;
+
+            mTimeFormat = new SimpleDateFormat("hh:mm", locale);
             mTimeFormat.setCalendar(mCalendar);
 
-            m24HrTimeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+            m24HrTimeFormat = new SimpleDateFormat("HH:mm", locale);
             m24HrTimeFormat.setCalendar(mCalendar);
 
-            mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
+            mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", locale);
             mDateFormat.setCalendar(mCalendar);
         }
 
@@ -479,32 +496,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         private int getArtResourceForWeatherCondition(int weatherId) {
-            // Based on weather code data found at:
-            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-            if (weatherId >= 200 && weatherId <= 232) {
-                return R.drawable.art_storm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                return R.drawable.art_light_rain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                return R.drawable.art_rain;
-            } else if (weatherId == 511) {
-                return R.drawable.art_snow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                return R.drawable.art_rain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                return R.drawable.art_snow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                return R.drawable.art_fog;
-            } else if (weatherId == 761 || weatherId == 781) {
-                return R.drawable.art_storm;
-            } else if (weatherId == 800) {
-                return R.drawable.art_clear;
-            } else if (weatherId == 801) {
-                return R.drawable.art_light_clouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                return R.drawable.art_clouds;
-            }
-            return -1;
+            int art = WeatherConditions.getArt(weatherId);
+            return art == WeatherConditions.ART_NONE ? -1 : ART_RESOURCES[art];
         }
 
     }
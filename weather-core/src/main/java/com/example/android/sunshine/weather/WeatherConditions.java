@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.weather;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What to show for an OpenWeatherMap weather condition id: which piece of art, which
+ * photograph and which description.  This is the one place the condition codes are mapped;
+ * the app and the watch face turn the answers into their own resources.
+ *
+ * Each mapping is a table indexed by weather id, so a lookup is an array read.  The tables are
+ * filled from the ranges below, the first range listing an id winning, which keeps the answers
+ * of the if/else chains they replace (761 is fog, not storm, for instance).
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    // No condition id is outside this range
+    static final int MIN_ID = 200;
+    static final int MAX_ID = 962;
+
+    private static final byte NONE = -1;
+
+    // Art, both the local drawables and the art packs
+    public static final int ART_NONE = NONE;
+    public static final int ART_STORM = 0;
+    public static final int ART_LIGHT_RAIN = 1;
+    public static final int ART_RAIN = 2;
+    public static final int ART_SNOW = 3;
+    public static final int ART_FOG = 4;
+    public static final int ART_CLEAR = 5;
+    public static final int ART_LIGHT_CLOUDS = 6;
+    public static final int ART_CLOUDS = 7;
+    public static final int ART_COUNT = 8;
+
+    // What each art is called in an art pack's url, by art
+    private static final String[] ART_NAMES = {"storm", "light_rain", "rain", "snow", "fog",
+            "clear", "light_clouds", "clouds"};
+
+    // {first id, last id, art}, in the order they were tested
+    private static final int[][] ART_RANGES = {
+            {200, 232, ART_STORM},
+            {300, 321, ART_LIGHT_RAIN},
+            {500, 504, ART_RAIN},
+            {511, 511, ART_SNOW},
+            {520, 531, ART_RAIN},
+            {600, 622, ART_SNOW},
+            {701, 761, ART_FOG},
+            {761, 761, ART_STORM},
+            {781, 781, ART_STORM},
+            {800, 800, ART_CLEAR},
+            {801, 801, ART_LIGHT_CLOUDS},
+            {802, 804, ART_CLOUDS},
+    };
+
+    // Photographs for the Muzei wallpaper, which tell raised dust apart from a thunderstorm
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg",
+    };
+
+    // {first id, last id, index into IMAGE_URLS}
+    private static final int[][] IMAGE_RANGES = {
+            {200, 232, 0},
+            {300, 321, 1},
+            {500, 504, 2},
+            {511, 511, 3},
+            {520, 531, 2},
+            {600, 622, 3},
+            {701, 761, 4},
+            {761, 761, 5},
+            {781, 781, 5},
+            {800, 800, 6},
+            {801, 801, 7},
+            {802, 804, 8},
+    };
+
+    public static final int DESCRIPTION_UNKNOWN = NONE;
+
+    // The descriptions, named after the string resources the app keeps them in.  Ids without
+    // one of their own (521 and 522 among them) are described as unknown.
+    private static final String[] DESCRIPTION_NAMES = {
+            "condition_2xx", "condition_3xx",
+            "condition_500", "condition_501", "condition_502", "condition_503", "condition_504",
+            "condition_511", "condition_520", "condition_531",
+            "condition_600", "condition_601", "condition_602", "condition_611", "condition_612",
+            "condition_615", "condition_616", "condition_620", "condition_621", "condition_622",
+            "condition_701", "condition_711", "condition_721", "condition_731", "condition_741",
+            "condition_751", "condition_761", "condition_762", "condition_771", "condition_781",
+            "condition_800", "condition_801", "condition_802", "condition_803", "condition_804",
+            "condition_900", "condition_901", "condition_902", "condition_903", "condition_904",
+            "condition_905", "condition_906",
+            "condition_951", "condition_952", "condition_953", "condition_954", "condition_955",
+            "condition_956", "condition_957", "condition_958", "condition_959", "condition_960",
+            "condition_961", "condition_962",
+    };
+
+    private static final byte[] sArt = new byte[MAX_ID - MIN_ID + 1];
+    private static final byte[] sImage = new byte[MAX_ID - MIN_ID + 1];
+    private static final byte[] sDescription = new byte[MAX_ID - MIN_ID + 1];
+
+    static {
+        fill(sArt, ART_RANGES);
+        fill(sImage, IMAGE_RANGES);
+
+        Arrays.fill(sDescription, NONE);
+        Arrays.fill(sDescription, 200 - MIN_ID, 232 - MIN_ID + 1, (byte) 0);
+        Arrays.fill(sDescription, 300 - MIN_ID, 321 - MIN_ID + 1, (byte) 1);
+        // The rest are each named after their one id
+        for (int i = 2; i < DESCRIPTION_NAMES.length; i++) {
+            int id = Integer.parseInt(DESCRIPTION_NAMES[i].substring("condition_".length()));
+            sDescription[id - MIN_ID] = (byte) i;
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void fill(byte[] table, int[][] ranges) {
+        Arrays.fill(table, NONE);
+        for (int[] range : ranges) {
+            for (int id = range[0]; id <= range[1]; id++) {
+                if (table[id - MIN_ID] == NONE) {
+                    table[id - MIN_ID] = (byte) range[2];
+                }
+            }
+        }
+    }
+
+    private static int lookup(byte[] table, int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) return NONE;
+        return table[weatherId - MIN_ID];
+    }
+
+    /**
+     * The art for a condition, one of the ART_ constants, or {@link #ART_NONE}.
+     */
+    public static int getArt(int weatherId) {
+        return lookup(sArt, weatherId);
+    }
+
+    /**
+     * The url of a condition's art in an art pack, given the pack's url format (which has a %s
+     * for the art's name), or null if there's no art for it.
+     */
+    public static String getArtUrl(String artPackFormat, int weatherId) {
+        int art = getArt(weatherId);
+        if (art == ART_NONE) return null;
+        return String.format(Locale.US, artPackFormat, ART_NAMES[art]);
+    }
+
+    /**
+     * A photograph of the condition, or null if there isn't one.
+     */
+    public static String getImageUrl(int weatherId) {
+        int image = lookup(sImage, weatherId);
+        return image == NONE ? null : IMAGE_URLS[image];
+    }
+
+    /**
+     * The index of a condition's description, below {@link #getDescriptionCount()}, or
+     * {@link #DESCRIPTION_UNKNOWN}.
+     */
+    public static int getDescription(int weatherId) {
+        return lookup(sDescription, weatherId);
+    }
+
+    public static int getDescriptionCount() {
+        return DESCRIPTION_NAMES.length;
+    }
+
+    /**
+     * The name of the string resource holding a description, e.g. "condition_500".
+     */
+    public static String getDescriptionName(int description) {
+        return DESCRIPTION_NAMES[description];
+    }
+}
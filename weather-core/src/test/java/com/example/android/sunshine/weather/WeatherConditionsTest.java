@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.weather;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the tables against the if/else chains and switch they replaced, copied below with the
+ * resources swapped for their names, for every id from well below the first condition to well
+ * above the last.
+ */
+public class WeatherConditionsTest {
+
+    private static final int FIRST_ID = -1000;
+    private static final int LAST_ID = 2000;
+
+    private static final String ART_PACK = "https://example.com/art_%s.png";
+
+    private static final String[] ART_NAMES = {"storm", "light_rain", "rain", "snow", "fog",
+            "clear", "light_clouds", "clouds"};
+
+    // Utility.getArtResourceForWeatherCondition, which getIconResourceForWeatherCondition,
+    // getArtUrlForWeatherCondition and the watch face's copy all followed
+    private static String legacyArt(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+
+    // Utility.getImageUrlForWeatherCondition
+    private static String legacyImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+
+    // Utility.getStringForWeatherCondition, null where it fell back to condition_unknown
+    private static String legacyDescription(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "condition_2xx";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "condition_3xx";
+        } else switch (weatherId) {
+            case 500: case 501: case 502: case 503: case 504:
+            case 511: case 520: case 531:
+            case 600: case 601: case 602: case 611: case 612:
+            case 615: case 616: case 620: case 621: case 622:
+            case 701: case 711: case 721: case 731: case 741:
+            case 751: case 761: case 762: case 771: case 781:
+            case 800: case 801: case 802: case 803: case 804:
+            case 900: case 901: case 902: case 903: case 904: case 905: case 906:
+            case 951: case 952: case 953: case 954: case 955:
+            case 956: case 957: case 958: case 959: case 960: case 961: case 962:
+                return "condition_" + weatherId;
+            default:
+                return null;
+        }
+    }
+
+    @Test
+    public void artMatchesLegacy() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            int art = WeatherConditions.getArt(id);
+            String name = art == WeatherConditions.ART_NONE ? null : ART_NAMES[art];
+            assertEquals("art for " + id, legacyArt(id), name);
+        }
+    }
+
+    @Test
+    public void artUrlMatchesLegacy() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            String art = legacyArt(id);
+            String expected = art == null ? null : String.format(Locale.US, ART_PACK, art);
+            assertEquals("art url for " + id, expected, WeatherConditions.getArtUrl(ART_PACK, id));
+        }
+    }
+
+    @Test
+    public void imageUrlMatchesLegacy() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("image for " + id, legacyImageUrl(id), WeatherConditions.getImageUrl(id));
+        }
+    }
+
+    @Test
+    public void descriptionMatchesLegacy() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            int description = WeatherConditions.getDescription(id);
+            String name = description == WeatherConditions.DESCRIPTION_UNKNOWN
+                    ? null : WeatherConditions.getDescriptionName(description);
+            assertEquals("description for " + id, legacyDescription(id), name);
+        }
+    }
+
+    // 761 was caught by the fog range before the storm test, and so stays fog
+    @Test
+    public void overlappingRangesKeepFirstAnswer() {
+        assertEquals(WeatherConditions.ART_FOG, WeatherConditions.getArt(761));
+        assertEquals(WeatherConditions.ART_STORM, WeatherConditions.getArt(781));
+        assertTrue(WeatherConditions.getImageUrl(761).contains("fog"));
+        assertTrue(WeatherConditions.getImageUrl(781).contains("dust"));
+        assertNull(WeatherConditions.getArtUrl(ART_PACK, 900));
+    }
+}